@@ -0,0 +1,89 @@
+package com.dunncom.graphics.bench;
+
+import java.io.*;
+import java.util.*;
+
+import com.dunncom.graphics.*;
+
+/**
+ * Helpers shared by the benchmarks: finding and loading the bundled models,
+ * and lining up columns of results.
+ *
+ * @author Thomas Dunn
+ */
+
+public class BenchmarkSupport {
+
+  /**
+   * @return the names of all the model files in a directory, skipping the
+   * manifest and binary mesh files, in alphabetical order
+   */
+  public static String[] modelFilenames(File modelsDir) {
+    String names[] = modelsDir.list();
+    Vector models = new Vector();
+    for (int i = 0; i < names.length; i++) {
+      if (names[i].indexOf('.') > 0 &&
+          ! names[i].endsWith(BinaryMeshFile.BINARY_SUFFIX)) {
+        models.addElement(names[i]);
+      }
+    }
+    String filenames[] = new String[models.size()];
+    models.copyInto(filenames);
+    Arrays.sort(filenames);
+    return filenames;
+  }
+
+  /**
+   * Reads a model file with the reader for its format
+   */
+  public static Polyhedron load(File modelsDir, String filename) throws IOException {
+    BufferedReader fileReader = new BufferedReader(new FileReader(new File(modelsDir, filename)));
+    try {
+      return ThreeDimensionalObjectFileReader.createReader(filename, fileReader).parse();
+    }
+    finally {
+      fileReader.close();
+    }
+  }
+
+  /**
+   * @return a model in the binary mesh format, as BinaryMeshFile writes it
+   */
+  public static byte[] toBinary(Polyhedron polyhedron) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryMeshFile.write(polyhedron, out);
+    return out.toByteArray();
+  }
+
+  /**
+   * @return the indices of values, ordered from smallest value to largest
+   */
+  public static Integer[] sortedOrder(final int values[]) {
+    Integer order[] = new Integer[values.length];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = Integer.valueOf(i);
+    }
+    Arrays.sort(order, new Comparator() {
+      public int compare(Object o1, Object o2) {
+        return values[((Integer) o1).intValue()] - values[((Integer) o2).intValue()];
+      }
+    });
+    return order;
+  }
+
+  public static String pad(String s, int width) {
+    StringBuffer buffer = new StringBuffer(s);
+    while (buffer.length() < width) {
+      buffer.append(' ');
+    }
+    return buffer.toString();
+  }
+
+  public static String pad(int n, int width) {
+    return pad(String.valueOf(n), width);
+  }
+
+  public static String pad(double d, int width) {
+    return pad(String.valueOf(Math.round(d * 100) / 100.0), width);
+  }
+}
@@ -0,0 +1,254 @@
+package com.dunncom.graphics.bench;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.*;
+
+import com.dunncom.graphics.*;
+
+/**
+ * Checks how much heap the faces of the biggest bundled models take.  A
+ * Polyhedron keeps its faces as vertex indices in the Mesh and a few
+ * arrays indexed by face.  It used to keep a Polygon object for every
+ * face in a Vector; LegacyFace has the fields Polygon had then, and one is
+ * made for every face, the way the readers did, to measure what that
+ * took.
+ * <P>
+ * Both ways are measured the same way, as the heap still in use after
+ * garbage collection once the faces are made, less the heap the vertices
+ * alone take, so array headers and the room arrays and Vectors leave to
+ * grow into are counted.  "stored" is the faces of a model that has been
+ * loaded and projected.  "drawn" adds what drawing the model keeps
+ * around: for a Polyhedron, the edge list, the depth sorter, the screen
+ * coordinates and the wireframe path, after drawing it filled, depth
+ * sorted and as a wireframe; for the old faces, the Color each Polygon
+ * made when it was drawn.  Fails, with exit status 1, unless the stored
+ * faces of every model take at least ten times less heap than they used
+ * to.
+ * <P>
+ * To run:
+ * <pre>
+ * java com.dunncom.graphics.bench.FootprintBenchmark [models directory]
+ * </pre>
+ *
+ * @author Thomas Dunn
+ */
+
+public class FootprintBenchmark {
+
+  static final String MODELS[] = {"mqcover.obj", "x_wing.obj", "sthenge.obj", "al.obj"};
+
+  /**
+   * How many times smaller the stored faces have to be than they used to
+   * be
+   */
+  static final int REQUIRED_RATIO = 10;
+
+  /**
+   * The fields a Polygon used to have, each Polygon making its own lights
+   * and unit vector
+   */
+  static class LegacyFace {
+    Color color;
+    Color baseColor;
+    double I1;
+    double I2;
+    Point3D L1 = new Point3D(1, 0, 1);
+    Point3D L2 = new Point3D(-.3, 0, 1);
+    Point3D u1 = new Point3D(0.0, 0.0, 0.0);
+    Point3D u2 = new Point3D(0.0, 0.0, 1.0);
+    Point3D points[];
+    double A;
+    double B;
+    double C;
+    double D;
+    boolean filled;
+
+    LegacyFace(Point3D points[]) {
+      this.points = points;
+    }
+  }
+
+  public static void main(String args[]) throws IOException {
+    File modelsDir = new File(args.length > 0 ? args[0] : "src/models");
+
+    // the first model drawn sets up the drawing classes and worker
+    // threads, which shouldn't be counted as faces
+    Polyhedron warmUp = BenchmarkSupport.load(modelsDir, MODELS[0]);
+    measureFaces(warmUp, true);
+    measureFaces(warmUp, false);
+
+    System.out.println("model              faces  stored bytes/face        drawn bytes/face");
+    System.out.println("                          now   used to  ratio     now   used to  ratio");
+    boolean passed = true;
+    for (int m = 0; m < MODELS.length; m++) {
+      Polyhedron source = BenchmarkSupport.load(modelsDir, MODELS[m]);
+      int faceCount = source.getFaceCount();
+      long vertexBytes = measureVertices(source);
+      long faceBytes[] = measureFaces(source, true);
+      long legacyVertexBytes = measureLegacyVertices(source);
+      long legacyFaceBytes[] = measureLegacyFaces(source);
+
+      double stored = (double) (faceBytes[0] - vertexBytes) / faceCount;
+      double drawn = (double) (faceBytes[1] - vertexBytes) / faceCount;
+      double legacyStored = (double) (legacyFaceBytes[0] - legacyVertexBytes) / faceCount;
+      double legacyDrawn = (double) (legacyFaceBytes[1] - legacyVertexBytes) / faceCount;
+
+      double ratio = legacyStored / stored;
+      if (ratio < REQUIRED_RATIO) {
+        passed = false;
+      }
+      System.out.println(BenchmarkSupport.pad(MODELS[m], 17) +
+                         BenchmarkSupport.pad(faceCount, 7) +
+                         BenchmarkSupport.pad(stored, 6) +
+                         BenchmarkSupport.pad(legacyStored, 10) +
+                         BenchmarkSupport.pad(ratio, 7) +
+                         BenchmarkSupport.pad(drawn, 8) +
+                         BenchmarkSupport.pad(legacyDrawn, 10) +
+                         BenchmarkSupport.pad(legacyDrawn / drawn, 7));
+    }
+
+    if (! passed) {
+      System.out.println("FAILED: stored faces should take at least " + REQUIRED_RATIO +
+                         " times less heap than they used to");
+      System.exit(1);
+    }
+  }
+
+  /**
+   * @return the heap a Polyhedron with the vertices of source and no faces
+   * takes once projected
+   */
+  static long measureVertices(Polyhedron source) {
+    long before = usedHeap();
+    Polyhedron polyhedron = new Polyhedron();
+    addVertices(polyhedron, source.mesh);
+    polyhedron.trimToSize();
+    polyhedron.project(null);
+    long bytes = usedHeap() - before;
+    return bytes;
+  }
+
+  /**
+   * Builds a Polyhedron with the vertices and faces of source, the way
+   * the readers and ModelLoader do
+   * @param measure whether to measure it, or just build and draw it
+   * @return the heap it takes once projected, and once drawn every way
+   */
+  static long[] measureFaces(Polyhedron source, boolean measure) {
+    long bytes[] = new long[2];
+    long before = measure ? usedHeap() : 0;
+    Polyhedron polyhedron = new Polyhedron();
+    Mesh mesh = source.mesh;
+    addVertices(polyhedron, mesh);
+    int indices[] = new int[16];
+    for (int f = 0; f < mesh.faceCount; f++) {
+      int start = mesh.faceStart[f];
+      int count = mesh.faceStart[f + 1] - start;
+      if (count > indices.length) {
+        indices = new int[count];
+      }
+      System.arraycopy(mesh.faceVertices, start, indices, 0, count);
+      polyhedron.addFace(indices, count);
+    }
+    polyhedron.trimToSize();
+    polyhedron.project(null);
+    if (measure) {
+      bytes[0] = usedHeap() - before;
+    }
+
+    BufferedImage image = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+    Graphics g = image.getGraphics();
+    polyhedron.setFilled(true);
+    polyhedron.setDepthSorted(true);
+    polyhedron.draw(g);
+    polyhedron.setFilled(false);
+    polyhedron.draw(g);
+    g.dispose();
+    g = null;
+    image = null;
+    if (measure) {
+      bytes[1] = usedHeap() - before;
+    }
+
+    // keep the polyhedron alive until it has been measured
+    polyhedron.setDepthSorted(false);
+    return bytes;
+  }
+
+  static void addVertices(Polyhedron polyhedron, Mesh mesh) {
+    for (int i = 0; i < mesh.vertexCount; i++) {
+      polyhedron.addVertex(mesh.x[i], mesh.y[i], mesh.z[i]);
+    }
+  }
+
+  /**
+   * @return the heap the vertices of source took as Point3D objects in a
+   * Vector, the way a Polyhedron used to keep them
+   */
+  static long measureLegacyVertices(Polyhedron source) {
+    long before = usedHeap();
+    Vector points = legacyVertices(source.mesh);
+    long bytes = usedHeap() - before;
+    points.removeAllElements();
+    return bytes;
+  }
+
+  static Vector legacyVertices(Mesh mesh) {
+    Vector points = new Vector();
+    for (int i = 0; i < mesh.vertexCount; i++) {
+      points.addElement(new Point3D(mesh.x[i], mesh.y[i], mesh.z[i]));
+    }
+    return points;
+  }
+
+  /**
+   * Builds the vertices and faces of source the way a Polyhedron used to
+   * keep them, each face a Polygon of the shared vertex objects in a
+   * Vector
+   * @return the heap they take before and after each face has been given
+   * the Color it was drawn in
+   */
+  static long[] measureLegacyFaces(Polyhedron source) {
+    long bytes[] = new long[2];
+    long before = usedHeap();
+    Mesh mesh = source.mesh;
+    Vector points = legacyVertices(mesh);
+    Vector faces = new Vector();
+    for (int f = 0; f < mesh.faceCount; f++) {
+      int start = mesh.faceStart[f];
+      Point3D facePoints[] = new Point3D[mesh.faceStart[f + 1] - start];
+      for (int j = 0; j < facePoints.length; j++) {
+        facePoints[j] = (Point3D) points.elementAt(mesh.faceVertices[start + j]);
+      }
+      faces.addElement(new LegacyFace(facePoints));
+    }
+    bytes[0] = usedHeap() - before;
+
+    // Polygon.draw() made a new Color for the face every time
+    for (int f = 0; f < mesh.faceCount; f++) {
+      int grey = f & 0xff;
+      ((LegacyFace) faces.elementAt(f)).color = new Color(grey, grey, grey);
+    }
+    bytes[1] = usedHeap() - before;
+
+    // keep the old faces alive until they have been measured
+    faces.removeAllElements();
+    points.removeAllElements();
+    return bytes;
+  }
+
+  static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 4; i++) {
+      System.gc();
+      try {
+        Thread.sleep(50);
+      }
+      catch (InterruptedException ie) {}
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,178 @@
+package com.dunncom.graphics.bench;
+
+import java.io.*;
+import java.util.*;
+
+import com.dunncom.graphics.*;
+
+/**
+ * Times how long it takes to read each model in the models directory into a
+ * Polyhedron.  The models are listed in order of face count, along with the
+ * time per face, so it is easy to see how load time grows with model size.
+ * The bundled models are fairly small, so the same is then done for a
+ * series of generated .obj grids of increasing size, each of which is
+ * also read the way the readers used to, registering every vertex of
+ * every face with points.contains(), to show how load time grew with
+ * model size before the vertex index table.  Each model is also read
+ * from memory in the binary mesh format, to compare with parsing the
+ * text.
+ * <P>
+ * To run:
+ * <pre>
+ * java com.dunncom.graphics.bench.LoadBenchmark [models directory] [runs]
+ * </pre>
+ *
+ * @author Thomas Dunn
+ */
+
+public class LoadBenchmark {
+
+  public static void main(String args[]) throws IOException {
+    File modelsDir = new File(args.length > 0 ? args[0] : "src/models");
+    int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+    String filenames[] = BenchmarkSupport.modelFilenames(modelsDir);
+    int faceCounts[] = new int[filenames.length];
+    int vertexCounts[] = new int[filenames.length];
+    double millis[] = new double[filenames.length];
+    double binaryMillis[] = new double[filenames.length];
+
+    for (int i = 0; i < filenames.length; i++) {
+      // first load is a warm up, and gives us the counts
+      Polyhedron polyhedron = BenchmarkSupport.load(modelsDir, filenames[i]);
+      faceCounts[i] = polyhedron.getFaceCount();
+      vertexCounts[i] = polyhedron.points.size();
+
+      long best = Long.MAX_VALUE;
+      for (int run = 0; run < runs; run++) {
+        long start = System.nanoTime();
+        BenchmarkSupport.load(modelsDir, filenames[i]);
+        best = Math.min(best, System.nanoTime() - start);
+      }
+      millis[i] = best / 1000000.0;
+      binaryMillis[i] = timeBinary(polyhedron, runs);
+    }
+
+    // sort by face count
+    Integer order[] = BenchmarkSupport.sortedOrder(faceCounts);
+
+    System.out.println("model                faces  vertices   load ms   us/face binary ms");
+    double total = 0.0;
+    double binaryTotal = 0.0;
+    for (int n = 0; n < order.length; n++) {
+      int i = order[n].intValue();
+      total += millis[i];
+      binaryTotal += binaryMillis[i];
+      System.out.println(BenchmarkSupport.pad(filenames[i], 18) +
+                         BenchmarkSupport.pad(faceCounts[i], 8) +
+                         BenchmarkSupport.pad(vertexCounts[i], 10) +
+                         BenchmarkSupport.pad(millis[i], 10) +
+                         BenchmarkSupport.pad(1000.0 * millis[i] / faceCounts[i], 10) +
+                         BenchmarkSupport.pad(binaryMillis[i], 10));
+    }
+    System.out.println("total load ms: " + total + ", binary: " + binaryTotal);
+
+    System.out.println();
+    System.out.println("grid                 faces  vertices   load ms   us/face binary ms    old ms");
+    for (int size = 32; size <= 256; size *= 2) {
+      String grid = gridOBJ(size);
+      Polyhedron polyhedron = new OBJReader(new BufferedReader(new StringReader(grid))).parse();
+      long start = System.nanoTime();
+      new OBJReader(new BufferedReader(new StringReader(grid))).parse();
+      double gridMillis = (System.nanoTime() - start) / 1000000.0;
+      legacyLoad(grid);
+      start = System.nanoTime();
+      legacyLoad(grid);
+      double legacyMillis = (System.nanoTime() - start) / 1000000.0;
+      int faces = polyhedron.getFaceCount();
+      System.out.println(BenchmarkSupport.pad(size + "x" + size, 18) +
+                         BenchmarkSupport.pad(faces, 8) +
+                         BenchmarkSupport.pad(polyhedron.points.size(), 10) +
+                         BenchmarkSupport.pad(gridMillis, 10) +
+                         BenchmarkSupport.pad(1000.0 * gridMillis / faces, 10) +
+                         BenchmarkSupport.pad(timeBinary(polyhedron, 3), 10) +
+                         BenchmarkSupport.pad(legacyMillis, 10));
+    }
+  }
+
+  /**
+   * Reads an .obj file the way OBJReader used to, with a StringTokenizer
+   * for each line, and each face registering its vertices with the
+   * polyhedron's points by points.contains(), a linear search, so the
+   * time grows with the square of the number of vertices
+   * @return the number of vertices registered
+   */
+  static int legacyLoad(String obj) throws IOException {
+    BufferedReader in = new BufferedReader(new StringReader(obj));
+    Vector vertices = new Vector();
+    Vector points = new Vector();
+    Vector faces = new Vector();
+
+    // .obj vertices are numbered from 1
+    vertices.addElement(null);
+    String line;
+    while ((line = in.readLine()) != null) {
+      StringTokenizer st = new StringTokenizer(line);
+      String type = st.nextToken();
+      if (type.equals("v")) {
+        double x = Double.valueOf(st.nextToken()).doubleValue();
+        double y = Double.valueOf(st.nextToken()).doubleValue();
+        double z = Double.valueOf(st.nextToken()).doubleValue();
+        vertices.addElement(new Point3D(x, y, z));
+        continue;
+      }
+
+      Vector pointsVector = new Vector();
+      while (st.hasMoreTokens()) {
+        pointsVector.addElement(st.nextToken());
+      }
+      Point3D facePoints[] = new Point3D[pointsVector.size()];
+      for (int i = 0; i < facePoints.length; i++) {
+        facePoints[i] = (Point3D) vertices.elementAt(Integer.parseInt((String) pointsVector.elementAt(i)));
+      }
+      faces.addElement(facePoints);
+      for (int i = 0; i < facePoints.length; i++) {
+        if (! points.contains(facePoints[i])) {
+          points.addElement(facePoints[i]);
+        }
+      }
+    }
+    return points.size();
+  }
+
+  /**
+   * @return the best time in milliseconds to read a model from memory in
+   * the binary mesh format
+   */
+  static double timeBinary(Polyhedron polyhedron, int runs) throws IOException {
+    byte binary[] = BenchmarkSupport.toBinary(polyhedron);
+    BinaryMeshFile.read(new ByteArrayInputStream(binary));
+    long best = Long.MAX_VALUE;
+    for (int run = 0; run < runs; run++) {
+      long start = System.nanoTime();
+      BinaryMeshFile.read(new ByteArrayInputStream(binary));
+      best = Math.min(best, System.nanoTime() - start);
+    }
+    return best / 1000000.0;
+  }
+
+  /**
+   * Generates a flat size by size grid of quadrilaterals in .obj format
+   */
+  static String gridOBJ(int size) {
+    StringBuffer obj = new StringBuffer();
+    for (int row = 0; row <= size; row++) {
+      for (int column = 0; column <= size; column++) {
+        obj.append("v " + column + " " + row + " 0\n");
+      }
+    }
+    for (int row = 0; row < size; row++) {
+      for (int column = 0; column < size; column++) {
+        int first = row * (size + 1) + column + 1;
+        obj.append("f " + first + " " + (first + 1) + " " +
+                   (first + size + 2) + " " + (first + size + 1) + "\n");
+      }
+    }
+    return obj.toString();
+  }
+}
@@ -0,0 +1,140 @@
+package com.dunncom.graphics.bench;
+
+import java.io.*;
+
+import com.dunncom.graphics.*;
+
+/**
+ * Times ThreeDimensionalObjectFileReader.parseParallel() with 1 up to some
+ * number of threads on made up .obj and .off files of a wavy grid cut into
+ * triangles, big enough to have millions of faces, and prints the speedup
+ * over parse().  It also checks that every thread count gives exactly the
+ * same mesh as parse().
+ * <P>
+ * The files are made in memory, so only parsing is timed.  A grid size of
+ * n gives n * n vertices and 2 * (n - 1) * (n - 1) faces; the default of
+ * 1000 makes files of about 80 MB, so give the JVM a heap of 2 GB or so:
+ * <pre>
+ * java -Xmx2g com.dunncom.graphics.bench.ParallelParseBenchmark [grid size] [max threads] [runs]
+ * </pre>
+ * max threads defaults to the number of processors.
+ *
+ * @author Thomas Dunn
+ */
+
+public class ParallelParseBenchmark {
+
+  public static void main(String args[]) throws IOException {
+    int gridSize = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+    int runs = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+    System.out.println("processors: " + Runtime.getRuntime().availableProcessors() +
+                       ", grid: " + gridSize + " x " + gridSize +
+                       ", faces: " + 2 * (gridSize - 1) * (gridSize - 1));
+    System.out.println("file        MB  threads        ms      MB/s   speedup");
+
+    String filenames[] = {"grid.obj", "grid.off"};
+    for (int f = 0; f < filenames.length; f++) {
+      byte bytes[] = makeGrid(filenames[f], gridSize);
+
+      ParallelTransform.setThreadCount(1);
+      Mesh expected = parse(filenames[f], bytes, false).mesh;
+      double singleThread = 0.0;
+      for (int threads = 1; threads <= maxThreads; threads++) {
+        ParallelTransform.setThreadCount(threads);
+
+        Mesh mesh = null;
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < runs; run++) {
+          mesh = null;
+          System.gc();
+          long start = System.nanoTime();
+          mesh = parse(filenames[f], bytes, true).mesh;
+          best = Math.min(best, System.nanoTime() - start);
+        }
+        double millis = best / 1e6;
+        if (threads == 1) {
+          singleThread = millis;
+        }
+
+        System.out.println(BenchmarkSupport.pad(filenames[f], 10) +
+                           BenchmarkSupport.pad(bytes.length / 1e6, 6) +
+                           BenchmarkSupport.pad(threads, 9) +
+                           BenchmarkSupport.pad(millis, 10) +
+                           BenchmarkSupport.pad(bytes.length / (best / 1e9) / 1e6, 10) +
+                           BenchmarkSupport.pad(singleThread / millis, 10) +
+                           (sameMesh(mesh, expected) ? "" : "RESULTS DIFFER FROM SERIAL"));
+      }
+    }
+    ParallelTransform.setThreadCount(Runtime.getRuntime().availableProcessors());
+  }
+
+  static Polyhedron parse(String filename, byte bytes[], boolean parallel) {
+    ThreeDimensionalObjectFileReader reader =
+      ThreeDimensionalObjectFileReader.createReader(filename, new ByteArrayInputStream(bytes));
+    return parallel ? reader.parseParallel() : reader.parse();
+  }
+
+  /**
+   * @return the text of an .obj or .off file of a wavy grid of
+   * gridSize * gridSize vertices, cut into triangles
+   */
+  static byte[] makeGrid(String filename, int gridSize) throws IOException {
+    boolean obj = filename.endsWith(".obj");
+    int faces = 2 * (gridSize - 1) * (gridSize - 1);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(bytes, "ISO-8859-1")));
+    if (! obj) {
+      out.println("OFF");
+      out.println(gridSize * gridSize + " " + faces + " 0");
+      out.println();
+    }
+
+    for (int row = 0; row < gridSize; row++) {
+      for (int column = 0; column < gridSize; column++) {
+        double x = (double) column / gridSize;
+        double z = (double) row / gridSize;
+        double y = Math.round(Math.sin(x * 20) * Math.cos(z * 20) * 1e5) / 1e6;
+        out.println((obj ? "v " : "") + x + " " + y + " " + z);
+      }
+    }
+    if (! obj) {
+      out.println();
+    }
+
+    int first = obj ? 1 : 0;
+    for (int row = 0; row < gridSize - 1; row++) {
+      for (int column = 0; column < gridSize - 1; column++) {
+        int corner = row * gridSize + column + first;
+        String start = obj ? "f " : "3 ";
+        out.println(start + corner + " " + (corner + 1) + " " + (corner + gridSize));
+        out.println(start + (corner + 1) + " " + (corner + gridSize + 1) + " " + (corner + gridSize));
+      }
+    }
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  static boolean sameMesh(Mesh mesh, Mesh expected) {
+    if (mesh.vertexCount != expected.vertexCount || mesh.faceCount != expected.faceCount) {
+      return false;
+    }
+    for (int i = 0; i < mesh.vertexCount; i++) {
+      if (mesh.x[i] != expected.x[i] || mesh.y[i] != expected.y[i] || mesh.z[i] != expected.z[i]) {
+        return false;
+      }
+    }
+    for (int i = 0; i <= mesh.faceCount; i++) {
+      if (mesh.faceStart[i] != expected.faceStart[i]) {
+        return false;
+      }
+    }
+    for (int i = 0; i < mesh.faceStart[mesh.faceCount]; i++) {
+      if (mesh.faceVertices[i] != expected.faceVertices[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
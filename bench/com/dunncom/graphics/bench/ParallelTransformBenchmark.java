@@ -0,0 +1,85 @@
+package com.dunncom.graphics.bench;
+
+import java.io.*;
+
+import com.dunncom.graphics.*;
+
+/**
+ * Times Polyhedron.project(), the per-frame vertex transform and face
+ * shading, on the biggest bundled models with 1 up to some number of
+ * threads, and prints the speedup over a single thread.  It also checks
+ * that every thread count gives exactly the same view coordinates.
+ * <P>
+ * To run:
+ * <pre>
+ * java com.dunncom.graphics.bench.ParallelTransformBenchmark [models directory] [max threads] [frames]
+ * </pre>
+ * max threads defaults to the number of processors.
+ *
+ * @author Thomas Dunn
+ */
+
+public class ParallelTransformBenchmark {
+
+  static final String MODELS[] = {"mqcover.obj", "x_wing.obj", "sthenge.obj", "al.obj"};
+
+  public static void main(String args[]) throws IOException {
+    File modelsDir = new File(args.length > 0 ? args[0] : "src/models");
+    int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+    int frames = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+
+    System.out.println("processors: " + Runtime.getRuntime().availableProcessors() +
+                       ", threshold: " + ParallelTransform.getThreshold());
+    System.out.println("model              threads  us/frame   speedup");
+
+    for (int m = 0; m < MODELS.length; m++) {
+      Polyhedron polyhedron = BenchmarkSupport.load(modelsDir, MODELS[m]);
+      Matrix3D view = Matrix3D.createRotateAroundPointMatrix(polyhedron.averagePoint(), 0.3, 0.2, 0.1);
+
+      // serial result, to compare the others against
+      ParallelTransform.setThreadCount(1);
+      polyhedron.project(view);
+      double expectedX[] = polyhedron.viewX.clone();
+      int expectedShade = sumShades(polyhedron);
+
+      double singleThread = 0.0;
+      for (int threads = 1; threads <= maxThreads; threads++) {
+        ParallelTransform.setThreadCount(threads);
+
+        // warm up
+        for (int i = 0; i < frames; i++) {
+          polyhedron.project(view);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+          polyhedron.project(view);
+        }
+        double micros = (System.nanoTime() - start) / 1000.0 / frames;
+        if (threads == 1) {
+          singleThread = micros;
+        }
+
+        boolean same = sumShades(polyhedron) == expectedShade;
+        for (int i = 0; i < expectedX.length && same; i++) {
+          same = polyhedron.viewX[i] == expectedX[i];
+        }
+
+        System.out.println(BenchmarkSupport.pad(MODELS[m], 19) +
+                           BenchmarkSupport.pad(threads, 9) +
+                           BenchmarkSupport.pad(micros, 11) +
+                           BenchmarkSupport.pad(singleThread / micros, 10) +
+                           (same ? "" : "RESULTS DIFFER FROM SERIAL"));
+      }
+    }
+    ParallelTransform.setThreadCount(1);
+  }
+
+  static int sumShades(Polyhedron polyhedron) {
+    int sum = 0;
+    for (int i = 0; i < polyhedron.mesh.faceCount; i++) {
+      sum += polyhedron.faceShades[i] & 0xff;
+    }
+    return sum;
+  }
+}
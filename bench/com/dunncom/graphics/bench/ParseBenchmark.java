@@ -0,0 +1,100 @@
+package com.dunncom.graphics.bench;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+
+import com.dunncom.graphics.*;
+
+/**
+ * Measures how fast each of the model formats is parsed, in megabytes of
+ * file per second, over all the bundled models of that format.  The files
+ * are read into memory first, so only parsing is timed.  Also shows how
+ * many bytes were allocated for each byte parsed, where the JVM can tell,
+ * which is mostly the Polyhedron being built, since the readers make no
+ * objects per line.
+ * <P>
+ * To run:
+ * <pre>
+ * java com.dunncom.graphics.bench.ParseBenchmark [models directory] [runs]
+ * </pre>
+ *
+ * @author Thomas Dunn
+ */
+
+public class ParseBenchmark {
+
+  static final String EXTENSIONS[] = {".nff", ".nfz", ".off", ".ofo", ".obj"};
+
+  public static void main(String args[]) throws IOException {
+    File modelsDir = new File(args.length > 0 ? args[0] : "src/models");
+    int runs = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+
+    String filenames[] = BenchmarkSupport.modelFilenames(modelsDir);
+
+    System.out.println("format  files     bytes      MB/s  alloc B/B");
+    for (int e = 0; e < EXTENSIONS.length; e++) {
+      Vector names = new Vector();
+      Vector contents = new Vector();
+      long totalBytes = 0;
+      for (int i = 0; i < filenames.length; i++) {
+        if (filenames[i].endsWith(EXTENSIONS[e])) {
+          byte bytes[] = readFile(new File(modelsDir, filenames[i]));
+          names.addElement(filenames[i]);
+          contents.addElement(bytes);
+          totalBytes += bytes.length;
+        }
+      }
+      if (names.size() == 0) {
+        continue;
+      }
+
+      long best = Long.MAX_VALUE;
+      long allocated = -1;
+      for (int run = 0; run < runs; run++) {
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < names.size(); i++) {
+          InputStream in = new ByteArrayInputStream((byte[]) contents.elementAt(i));
+          ThreeDimensionalObjectFileReader.createReader((String) names.elementAt(i), in).parse();
+        }
+        best = Math.min(best, System.nanoTime() - start);
+        if (allocatedBefore >= 0) {
+          allocated = allocatedBytes() - allocatedBefore;
+        }
+      }
+
+      double megabytesPerSecond = totalBytes / (best / 1e9) / 1e6;
+      System.out.println(BenchmarkSupport.pad(EXTENSIONS[e], 8) +
+                         BenchmarkSupport.pad(names.size(), 6) +
+                         BenchmarkSupport.pad(String.valueOf(totalBytes), 10) +
+                         BenchmarkSupport.pad(megabytesPerSecond, 10) +
+                         (allocated >= 0 ? BenchmarkSupport.pad((double) allocated / totalBytes, 10) : "n/a"));
+    }
+  }
+
+  static byte[] readFile(File file) throws IOException {
+    byte bytes[] = new byte[(int) file.length()];
+    DataInputStream in = new DataInputStream(new FileInputStream(file));
+    try {
+      in.readFully(bytes);
+    }
+    finally {
+      in.close();
+    }
+    return bytes;
+  }
+
+  /**
+   * @return bytes allocated by this thread so far, or -1 if the JVM
+   * doesn't say
+   */
+  static long allocatedBytes() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,262 @@
+package com.dunncom.graphics.bench;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.zip.*;
+
+import com.sun.net.httpserver.*;
+
+import com.dunncom.graphics.*;
+
+/**
+ * Loads the biggest bundled models through ModelLoader from an HTTP server
+ * of its own, with the link slowed to a given speed, and prints the bytes
+ * sent and the load time for each way the models can be sent:
+ * <UL>
+ * <LI>plain: the model file as is
+ * <LI>.gz file: a gzip compressed copy of the file, x_wing.obj.gz
+ * <LI>gzip encoding: the model file, compressed by the server with a
+ * Content-Encoding of gzip
+ * <LI>deflate encoding: the same with deflate, sent without the zlib
+ * header as some servers do
+ * <LI>local .gz and local .deflate: compressed copies of the file read
+ * from a directory through a file: URL, with no server at all
+ * </UL>
+ * Every way is checked to give exactly the same model as the plain file.
+ * <P>
+ * To run:
+ * <pre>
+ * java com.dunncom.graphics.bench.TransportBenchmark [models directory] [KB per second]
+ * </pre>
+ * The link runs at 1024 KB per second unless told otherwise.
+ *
+ * @author Thomas Dunn
+ */
+
+public class TransportBenchmark {
+
+  static final String MODELS[] = {"sthenge.obj", "x_wing.obj", "al.obj", "mqcover.obj"};
+
+  /**
+   * The model files, by name
+   */
+  static Hashtable files = new Hashtable();
+
+  /**
+   * What the server sends for each way of compressing each model file,
+   * so compressing isn't timed
+   */
+  static Hashtable compressed = new Hashtable();
+
+  /**
+   * Bytes of model files the server has sent
+   */
+  static long bytesSent;
+
+  static int bytesPerSecond;
+
+  public static void main(String args[]) throws Exception {
+    File modelsDir = new File(args.length > 0 ? args[0] : "src/models");
+    bytesPerSecond = 1024 * (args.length > 1 ? Integer.parseInt(args[1]) : 1024);
+
+    File localDir = new File(System.getProperty("java.io.tmpdir"), "TransportBenchmark");
+    localDir.mkdirs();
+    for (int m = 0; m < MODELS.length; m++) {
+      byte bytes[] = ParseBenchmark.readFile(new File(modelsDir, MODELS[m]));
+      files.put(MODELS[m], bytes);
+      writeFile(new File(localDir, MODELS[m] + ModelLoader.GZIP_SUFFIX), gzip(bytes));
+      writeFile(new File(localDir, MODELS[m] + ModelLoader.DEFLATE_SUFFIX), deflate(bytes, false));
+    }
+
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/plain/", new ModelHandler(null));
+    server.createContext("/gzip/", new ModelHandler("gzip"));
+    server.createContext("/deflate/", new ModelHandler("deflate"));
+    server.start();
+    String base = "http://127.0.0.1:" + server.getAddress().getPort();
+
+    System.out.println("link: " + (bytesPerSecond / 1024) + " KB/s");
+    System.out.println("model        sent as            KB sent        ms");
+    try {
+      // the first pass warms up, the second is printed
+      for (int pass = 0; pass < 2; pass++) {
+      for (int m = 0; m < MODELS.length; m++) {
+        byte expected[] = null;
+        String ways[] = {"plain", ".gz file", "gzip encoding", "deflate encoding",
+                         "local .gz", "local .deflate"};
+        for (int w = 0; w < ways.length; w++) {
+          URL modelsURL;
+          String filename = MODELS[m];
+          if (w == 0) {
+            modelsURL = new URL(base + "/plain/");
+          }
+          else if (w == 1) {
+            modelsURL = new URL(base + "/plain/");
+            filename += ModelLoader.GZIP_SUFFIX;
+          }
+          else if (w == 2) {
+            modelsURL = new URL(base + "/gzip/");
+          }
+          else if (w == 3) {
+            modelsURL = new URL(base + "/deflate/");
+          }
+          else {
+            modelsURL = localDir.toURI().toURL();
+            filename += w == 4 ? ModelLoader.GZIP_SUFFIX : ModelLoader.DEFLATE_SUFFIX;
+          }
+
+          ModelLoader loader = new ModelLoader(modelsURL, new QuietListener());
+          long sentBefore = getBytesSent();
+          long start = System.nanoTime();
+          Polyhedron polyhedron = loader.loadNow(filename);
+          double millis = (System.nanoTime() - start) / 1e6;
+          long sent = w < 4 ? getBytesSent() - sentBefore : new File(localDir, filename).length();
+
+          String check;
+          if (polyhedron == null) {
+            check = "COULDN'T LOAD";
+          }
+          else {
+            byte binary[] = BenchmarkSupport.toBinary(polyhedron);
+            if (expected == null) {
+              expected = binary;
+            }
+            check = Arrays.equals(binary, expected) ? "" : "DIFFERS FROM PLAIN";
+          }
+          if (pass == 1) {
+            System.out.println(BenchmarkSupport.pad(MODELS[m], 13) +
+                               BenchmarkSupport.pad(ways[w], 19) +
+                               BenchmarkSupport.pad(sent / 1024.0, 10) +
+                               BenchmarkSupport.pad(millis, 10) +
+                               check);
+          }
+        }
+      }
+      }
+    }
+    finally {
+      server.stop(0);
+    }
+  }
+
+  /**
+   * Serves the model files, compressed if the handler has a
+   * Content-Encoding and the client accepts it, or if a .gz file is asked
+   * for.  Anything else, such as a binary mesh file, isn't found.
+   */
+  static class ModelHandler implements HttpHandler {
+    String encoding;
+
+    ModelHandler(String encoding) {
+      this.encoding = encoding;
+    }
+
+    public void handle(HttpExchange exchange) throws IOException {
+      String path = exchange.getRequestURI().getPath();
+      String filename = path.substring(path.lastIndexOf('/') + 1);
+      byte bytes[] = (byte[]) files.get(ModelLoader.uncompressedName(filename));
+      if (bytes == null) {
+        exchange.sendResponseHeaders(404, -1);
+        exchange.close();
+        return;
+      }
+
+      String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+      if (filename.endsWith(ModelLoader.GZIP_SUFFIX)) {
+        bytes = compress(filename, "gzip", bytes);
+      }
+      else if (encoding != null && accepted != null && accepted.indexOf(encoding) >= 0) {
+        bytes = compress(filename, encoding, bytes);
+        exchange.getResponseHeaders().set("Content-Encoding", encoding);
+      }
+
+      exchange.sendResponseHeaders(200, bytes.length);
+      OutputStream out = exchange.getResponseBody();
+      long start = System.nanoTime();
+      for (int offset = 0; offset < bytes.length; offset += 4096) {
+        int length = Math.min(4096, bytes.length - offset);
+        out.write(bytes, offset, length);
+        out.flush();
+        addBytesSent(length);
+
+        // keep to the speed of the link
+        long due = (long) ((offset + length) * 1e9 / bytesPerSecond);
+        long ahead = due - (System.nanoTime() - start);
+        if (ahead > 0) {
+          try {
+            Thread.sleep(ahead / 1000000, (int) (ahead % 1000000));
+          }
+          catch (InterruptedException ie) {}
+        }
+      }
+      out.close();
+    }
+  }
+
+  static class QuietListener implements ModelLoader.Listener {
+    public void loadProgress(String modelFilename, long bytesRead, int vertices, int faces) {}
+
+    public void modelPartlyLoaded(String modelFilename, Polyhedron polyhedron,
+                                  Point3D range, Point3D center) {}
+
+    public void modelLoaded(String modelFilename, Polyhedron polyhedron) {}
+
+    public void loadFailed(String modelFilename, String reason) {
+      System.out.println(reason);
+    }
+  }
+
+  /**
+   * @return a model file compressed with gzip or deflate, compressing it
+   * the first time only
+   */
+  static synchronized byte[] compress(String filename, String encoding, byte bytes[]) throws IOException {
+    String key = encoding + " " + filename;
+    byte result[] = (byte[]) compressed.get(key);
+    if (result == null) {
+      result = encoding.equals("gzip") ? gzip(bytes) : deflate(bytes, true);
+      compressed.put(key, result);
+    }
+    return result;
+  }
+
+  static synchronized void addBytesSent(long n) {
+    bytesSent += n;
+  }
+
+  static synchronized long getBytesSent() {
+    return bytesSent;
+  }
+
+  static byte[] gzip(byte bytes[]) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    GZIPOutputStream gzip = new GZIPOutputStream(out);
+    gzip.write(bytes);
+    gzip.close();
+    return out.toByteArray();
+  }
+
+  /**
+   * @param raw true to leave out the zlib header and checksum
+   */
+  static byte[] deflate(byte bytes[], boolean raw) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+    DeflaterOutputStream deflate = new DeflaterOutputStream(out, deflater);
+    deflate.write(bytes);
+    deflate.close();
+    deflater.end();
+    return out.toByteArray();
+  }
+
+  static void writeFile(File file, byte bytes[]) throws IOException {
+    OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(bytes);
+    }
+    finally {
+      out.close();
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package com.dunncom.graphics.bench;
+
+import java.io.*;
+
+import com.dunncom.graphics.*;
+
+/**
+ * Compares the throughput of Matrix3D.transformCoordinates() using its own
+ * loop and using the vector kernel, on the vertices of x_wing.obj and
+ * sthenge.obj.  The vector kernel is only there when the vector classes
+ * are on the classpath and the VM is started with
+ * <code>--add-modules jdk.incubator.vector</code>.
+ * <P>
+ * To run:
+ * <pre>
+ * java --add-modules jdk.incubator.vector com.dunncom.graphics.bench.VectorTransformBenchmark [models directory] [frames]
+ * </pre>
+ *
+ * @author Thomas Dunn
+ */
+
+public class VectorTransformBenchmark {
+
+  static final String MODELS[] = {"x_wing.obj", "sthenge.obj"};
+
+  public static void main(String args[]) throws IOException {
+    File modelsDir = new File(args.length > 0 ? args[0] : "src/models");
+    int frames = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+
+    TransformKernel vectorKernel = Matrix3D.getTransformKernel();
+    if (vectorKernel == null) {
+      System.out.println("No vector kernel loaded, only timing the scalar loop.");
+    }
+
+    System.out.println("model         vertices  kernel   Mvertices/s");
+    for (int m = 0; m < MODELS.length; m++) {
+      Mesh mesh = BenchmarkSupport.load(modelsDir, MODELS[m]).mesh;
+      Matrix3D view = Matrix3D.createRotateAroundPointMatrix(mesh.averagePoint(), 0.3, 0.2, 0.1);
+      int count = mesh.vertexCount;
+      double outX[] = new double[count];
+      double outY[] = new double[count];
+      double outZ[] = new double[count];
+
+      Matrix3D.setTransformKernel(null);
+      double scalar = time(view, mesh, frames, outX, outY, outZ);
+      double expectedX[] = outX.clone();
+      print(MODELS[m], count, "scalar", scalar);
+
+      if (vectorKernel != null) {
+        Matrix3D.setTransformKernel(vectorKernel);
+        double vector = time(view, mesh, frames, outX, outY, outZ);
+        boolean same = true;
+        for (int i = 0; i < count && same; i++) {
+          same = outX[i] == expectedX[i];
+        }
+        print(MODELS[m], count, "vector", vector);
+        System.out.println("  speedup " + Math.round(100.0 * vector / scalar) / 100.0 +
+                           (same ? "" : ", RESULTS DIFFER FROM SCALAR"));
+      }
+    }
+    Matrix3D.setTransformKernel(vectorKernel);
+  }
+
+  /**
+   * @return millions of vertices transformed per second
+   */
+  static double time(Matrix3D view, Mesh mesh, int frames,
+                     double outX[], double outY[], double outZ[]) {
+    // warm up
+    for (int i = 0; i < frames; i++) {
+      view.transformCoordinates(mesh.x, mesh.y, mesh.z, mesh.vertexCount, outX, outY, outZ);
+    }
+
+    long start = System.nanoTime();
+    for (int i = 0; i < frames; i++) {
+      view.transformCoordinates(mesh.x, mesh.y, mesh.z, mesh.vertexCount, outX, outY, outZ);
+    }
+    long nanos = System.nanoTime() - start;
+    return 1000.0 * mesh.vertexCount * frames / nanos;
+  }
+
+  static void print(String model, int vertices, String kernel, double throughput) {
+    System.out.println(BenchmarkSupport.pad(model, 14) +
+                       BenchmarkSupport.pad(vertices, 10) +
+                       BenchmarkSupport.pad(kernel, 9) +
+                       BenchmarkSupport.pad(throughput, 10));
+  }
+}
@@ -0,0 +1,61 @@
+package com.dunncom.graphics.jmh;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.dunncom.graphics.*;
+
+/**
+ * Draws a model with Polyhedron.draw() into a BufferedImage, headless,
+ * filled and as a wireframe.  The model is projected once beforehand, so
+ * only drawing is timed.
+ *
+ * @author Thomas Dunn
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class DrawBenchmark {
+
+  static final int SIZE = 600;
+
+  @Param({"x_wing.obj", "sthenge.obj"})
+  public String model;
+
+  @Param({"true", "false"})
+  public boolean filled;
+
+  private Polyhedron polyhedron;
+  private BufferedImage image;
+  private Graphics2D g;
+
+  @Setup
+  public void loadModel() throws IOException {
+    polyhedron = Models.load(model);
+    polyhedron.setFilled(filled);
+    polyhedron.project(Models.viewMatrix(polyhedron, SIZE));
+    image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+    g = image.createGraphics();
+  }
+
+  @TearDown
+  public void disposeGraphics() {
+    g.dispose();
+  }
+
+  @Benchmark
+  public BufferedImage draw() {
+    g.setColor(Color.white);
+    g.fillRect(0, 0, SIZE, SIZE);
+    polyhedron.draw(g);
+    return image;
+  }
+}
@@ -0,0 +1,68 @@
+package com.dunncom.graphics.jmh;
+
+import java.io.*;
+
+import com.dunncom.graphics.*;
+
+/**
+ * Reads the bundled models, which the build puts on the classpath under
+ * models/, for the benchmarks.
+ *
+ * @author Thomas Dunn
+ */
+
+public class Models {
+
+  /**
+   * @return the bytes of a bundled model file
+   */
+  public static byte[] readBytes(String filename) throws IOException {
+    InputStream in = Models.class.getResourceAsStream("/models/" + filename);
+    if (in == null) {
+      throw new FileNotFoundException("models/" + filename + " isn't on the classpath");
+    }
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte buffer[] = new byte[8192];
+      int n;
+      while ((n = in.read(buffer)) > 0) {
+        out.write(buffer, 0, n);
+      }
+      return out.toByteArray();
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Reads a bundled model with the reader for its format
+   */
+  public static Polyhedron load(String filename) throws IOException {
+    return parse(filename, readBytes(filename));
+  }
+
+  /**
+   * Parses the bytes of a model file with the reader for its format
+   */
+  public static Polyhedron parse(String filename, byte bytes[]) {
+    return ThreeDimensionalObjectFileReader.createReader(filename, new ByteArrayInputStream(bytes)).parse();
+  }
+
+  /**
+   * @return the matrix the viewer shows a model with, turned a little, in
+   * a square of the given size, as ThreeDimensionalObjectsApplet fits it
+   */
+  public static Matrix3D viewMatrix(Polyhedron polyhedron, int size) {
+    Point3D range = polyhedron.range();
+    Point3D center = polyhedron.averagePoint();
+    double scaleAmount = (size * 0.66) / Math.max(Math.max(range.x, range.y), range.z);
+
+    Matrix3D centered = Matrix3D.createTranslationMatrix(-center.x, -center.y, -center.z);
+    Matrix3D orientation = Matrix3D.mult(Matrix3D.createXRotationMatrix(0.4),
+                                         Matrix3D.createYRotationMatrix(0.6));
+    Matrix3D scale = Matrix3D.createScalingMatrix(scaleAmount, scaleAmount, scaleAmount);
+    Matrix3D translate = Matrix3D.createTranslationMatrix(size / 2.0, size / 2.0, size / 2.0);
+    return Matrix3D.mult(Matrix3D.mult(translate, scale), Matrix3D.mult(orientation, centered));
+  }
+}
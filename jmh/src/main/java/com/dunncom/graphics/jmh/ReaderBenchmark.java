@@ -0,0 +1,41 @@
+package com.dunncom.graphics.jmh;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.dunncom.graphics.*;
+
+/**
+ * Parses bundled models with the reader for each format: NFFReader,
+ * NFZReader, OFFReader, OFOReader and OBJReader, the biggest models of
+ * each.  The file is read into memory first, so only parsing is timed.
+ *
+ * @author Thomas Dunn
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReaderBenchmark {
+
+  @Param({"ring_8h.nff", "soccerball.nff", "teapot.nfz", "head.off", "venus.off",
+          "shuttle.ofo", "sthenge.obj", "x_wing.obj"})
+  public String model;
+
+  private byte bytes[];
+
+  @Setup
+  public void readFile() throws IOException {
+    bytes = Models.readBytes(model);
+  }
+
+  @Benchmark
+  public Polyhedron parse() {
+    return Models.parse(model, bytes);
+  }
+}
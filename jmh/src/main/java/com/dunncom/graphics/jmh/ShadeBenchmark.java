@@ -0,0 +1,59 @@
+package com.dunncom.graphics.jmh;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.dunncom.graphics.*;
+
+/**
+ * Shades every face of a model two ways: a Polygon for each face running
+ * Polygon.computeNormal() and computeIllumination(), and
+ * Polyhedron.project(), which is what the viewer draws with, transforming
+ * the vertices and shading the faces of the mesh in one pass.
+ *
+ * @author Thomas Dunn
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShadeBenchmark {
+
+  @Param({"x_wing.obj", "sthenge.obj"})
+  public String model;
+
+  private Polyhedron polyhedron;
+  private Polygon faces[];
+  private Matrix3D view;
+
+  @Setup
+  public void loadModel() throws IOException {
+    polyhedron = Models.load(model);
+    faces = new Polygon[polyhedron.getFaceCount()];
+    for (int i = 0; i < faces.length; i++) {
+      faces[i] = polyhedron.getFace(i);
+    }
+    view = Models.viewMatrix(polyhedron, 600);
+  }
+
+  @Benchmark
+  public void polygons(Blackhole blackhole) {
+    for (int i = 0; i < faces.length; i++) {
+      faces[i].computeNormal();
+      faces[i].computeIllumination();
+      blackhole.consume(faces[i].I1 + faces[i].I2);
+    }
+  }
+
+  @Benchmark
+  public Polyhedron project() {
+    polyhedron.project(view);
+    return polyhedron;
+  }
+}
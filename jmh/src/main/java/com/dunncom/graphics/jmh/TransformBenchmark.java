@@ -0,0 +1,44 @@
+package com.dunncom.graphics.jmh;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.dunncom.graphics.*;
+
+/**
+ * Turns a model a little with Matrix3D.transformPolyhedron(), which
+ * transforms every vertex of the mesh and brings the points of the
+ * Polyhedron up to date.  The model keeps turning from one call to the
+ * next, as it would on screen.
+ *
+ * @author Thomas Dunn
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformBenchmark {
+
+  @Param({"x_wing.obj", "sthenge.obj"})
+  public String model;
+
+  private Polyhedron polyhedron;
+  private Matrix3D rotation;
+
+  @Setup
+  public void loadModel() throws IOException {
+    polyhedron = Models.load(model);
+    rotation = Matrix3D.createRotateAroundPointMatrix(polyhedron.averagePoint(), 0.03, 0.02, 0.01);
+  }
+
+  @Benchmark
+  public Polyhedron transformPolyhedron() {
+    rotation.transformPolyhedron(polyhedron);
+    return polyhedron;
+  }
+}
@@ -0,0 +1,258 @@
+package com.dunncom.graphics;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.BufferedOutputStream;
+
+/**
+ * Reads and writes meshes in a binary format that needs no parsing, and
+ * converts the text model formats to it.
+ * <P>
+ * A binary mesh file is named after the model it was made from with
+ * BINARY_SUFFIX on the end, so cube.nff becomes cube.nff.mesh, and the
+ * ModelLoader reads it in place of the text file when it is there.  All
+ * numbers are big endian, as DataOutputStream writes them.  The arrays
+ * are stored whole, the coordinates starting on a multiple of 8 bytes and
+ * the indices on a multiple of 4, so the file can just as well be memory
+ * mapped and its arrays used where they lie:
+ * <pre>
+ * offset  size                 contents
+ * 0       4                    MAGIC
+ * 4       4                    VERSION
+ * 8       4                    number of vertices, V
+ * 12      4                    number of faces, F
+ * 16      4                    number of face vertex indices, I
+ * 20      4                    0, padding
+ * 24      48                   minimum x, y, z then maximum x, y, z doubles
+ * 72      8 * V                x of every vertex, as doubles
+ *         8 * V                y of every vertex
+ *         8 * V                z of every vertex
+ *         4 * (F + 1)          where each face starts in the face indices,
+ *                              then I, as ints
+ *         4 * I                vertex indices of the faces one after
+ *                              another, as ints
+ * </pre>
+ * <P>
+ * To convert model files:
+ * <pre>
+ * java com.dunncom.graphics.BinaryMeshFile models/cube.nff models/teapot.nfz ...
+ * </pre>
+ *
+ * @author Thomas Dunn
+ */
+
+public class BinaryMeshFile {
+
+  /**
+   * First four bytes of a binary mesh file, "3DMS"
+   */
+  public static final int MAGIC = 0x33444d53;
+
+  public static final int VERSION = 1;
+
+  /**
+   * What goes on the end of a model's filename to name its binary mesh file
+   */
+  public static final String BINARY_SUFFIX = ".mesh";
+
+  /**
+   * Bytes before the vertex coordinates
+   */
+  static final int HEADER_BYTES = 72;
+
+  /**
+   * Writes the mesh of a polyhedron in the binary format
+   */
+  public static void write(Polyhedron polyhedron, OutputStream out) throws IOException {
+    Mesh mesh = polyhedron.mesh;
+    int vertexCount = mesh.vertexCount;
+    int faceCount = mesh.faceCount;
+    int indexCount = mesh.faceStart[faceCount];
+    Point3D min = mesh.minimums();
+    Point3D max = mesh.maximums();
+
+    DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+    data.writeInt(MAGIC);
+    data.writeInt(VERSION);
+    data.writeInt(vertexCount);
+    data.writeInt(faceCount);
+    data.writeInt(indexCount);
+    data.writeInt(0);
+    data.writeDouble(min.x);
+    data.writeDouble(min.y);
+    data.writeDouble(min.z);
+    data.writeDouble(max.x);
+    data.writeDouble(max.y);
+    data.writeDouble(max.z);
+    writeDoubles(data, mesh.x, vertexCount);
+    writeDoubles(data, mesh.y, vertexCount);
+    writeDoubles(data, mesh.z, vertexCount);
+    writeInts(data, mesh.faceStart, faceCount + 1);
+    writeInts(data, mesh.faceVertices, indexCount);
+    data.flush();
+  }
+
+  private static void writeDoubles(DataOutputStream data, double values[], int count) throws IOException {
+    for (int i = 0; i < count; i++) {
+      data.writeDouble(values[i]);
+    }
+  }
+
+  private static void writeInts(DataOutputStream data, int values[], int count) throws IOException {
+    for (int i = 0; i < count; i++) {
+      data.writeInt(values[i]);
+    }
+  }
+
+  /**
+   * Reads a polyhedron written by write().  The whole file is read into
+   * memory and the arrays of the mesh are filled straight from the bytes.
+   * @throws IOException if the stream can't be read, or isn't a binary
+   * mesh file this version can read
+   */
+  public static Polyhedron read(InputStream in) throws IOException {
+    byte header[] = new byte[HEADER_BYTES];
+    readFully(in, header, HEADER_BYTES);
+    if (getInt(header, 0) != MAGIC) {
+      throw new IOException("Not a binary mesh file");
+    }
+    if (getInt(header, 4) != VERSION) {
+      throw new IOException("Binary mesh file version " + getInt(header, 4) +
+                            " is not version " + VERSION);
+    }
+    int vertexCount = getInt(header, 8);
+    int faceCount = getInt(header, 12);
+    int indexCount = getInt(header, 16);
+    if (vertexCount < 0 || faceCount < 0 || indexCount < 0) {
+      throw new IOException("Bad counts in binary mesh file");
+    }
+
+    long bodyBytes = 24L * vertexCount + 4L * (faceCount + 1) + 4L * indexCount;
+    if (bodyBytes > Integer.MAX_VALUE) {
+      throw new IOException("Bad counts in binary mesh file");
+    }
+    byte body[] = new byte[(int) bodyBytes];
+    readFully(in, body, body.length);
+
+    Mesh mesh = new Mesh(vertexCount, faceCount);
+    int offset = 0;
+    offset = getDoubles(body, offset, mesh.x, vertexCount);
+    offset = getDoubles(body, offset, mesh.y, vertexCount);
+    offset = getDoubles(body, offset, mesh.z, vertexCount);
+    offset = getInts(body, offset, mesh.faceStart, faceCount + 1);
+    mesh.faceVertices = new int[Math.max(indexCount, 1)];
+    getInts(body, offset, mesh.faceVertices, indexCount);
+    mesh.vertexCount = vertexCount;
+    mesh.faceCount = faceCount;
+
+    // a bad index would only show up later, when the mesh is drawn
+    if (mesh.faceStart[0] != 0 || mesh.faceStart[faceCount] != indexCount) {
+      throw new IOException("Bad face starts in binary mesh file");
+    }
+    // every face needs three vertices for Mesh.computeFaceNormals()
+    for (int f = 0; f < faceCount; f++) {
+      if (mesh.faceStart[f + 1] - mesh.faceStart[f] < 3) {
+        throw new IOException("Bad face starts in binary mesh file");
+      }
+    }
+    for (int i = 0; i < indexCount; i++) {
+      if (mesh.faceVertices[i] < 0 || mesh.faceVertices[i] >= vertexCount) {
+        throw new IOException("Bad vertex index in binary mesh file");
+      }
+    }
+
+    return new Polyhedron(mesh);
+  }
+
+  private static void readFully(InputStream in, byte bytes[], int length) throws IOException {
+    int offset = 0;
+    while (offset < length) {
+      int n = in.read(bytes, offset, length - offset);
+      if (n < 0) {
+        throw new EOFException("Binary mesh file is cut short");
+      }
+      offset += n;
+    }
+  }
+
+  private static int getInt(byte bytes[], int offset) {
+    return ((bytes[offset] & 0xff) << 24) |
+           ((bytes[offset + 1] & 0xff) << 16) |
+           ((bytes[offset + 2] & 0xff) << 8) |
+           (bytes[offset + 3] & 0xff);
+  }
+
+  /**
+   * @return the offset after the values
+   */
+  private static int getInts(byte bytes[], int offset, int values[], int count) {
+    for (int i = 0; i < count; i++) {
+      values[i] = getInt(bytes, offset);
+      offset += 4;
+    }
+    return offset;
+  }
+
+  /**
+   * @return the offset after the values
+   */
+  private static int getDoubles(byte bytes[], int offset, double values[], int count) {
+    for (int i = 0; i < count; i++) {
+      long high = getInt(bytes, offset);
+      long low = getInt(bytes, offset + 4) & 0xffffffffL;
+      values[i] = Double.longBitsToDouble((high << 32) | low);
+      offset += 8;
+    }
+    return offset;
+  }
+
+  /**
+   * Converts each model file named to a binary mesh file next to it
+   */
+  public static void main(String args[]) throws IOException {
+    if (args.length == 0) {
+      System.out.println("usage: java com.dunncom.graphics.BinaryMeshFile model-file ...");
+      return;
+    }
+    for (int i = 0; i < args.length; i++) {
+      String name = new File(args[i]).getName();
+      if (name.indexOf(".") < 0) {
+        System.out.println(args[i] + ": file format not recognized");
+        continue;
+      }
+      BufferedReader fileReader = new BufferedReader(new FileReader(args[i]));
+      Polyhedron polyhedron;
+      try {
+        ThreeDimensionalObjectFileReader objectReader =
+          ThreeDimensionalObjectFileReader.createReader(name, fileReader);
+        if (objectReader == null) {
+          System.out.println(args[i] + ": file format not recognized");
+          continue;
+        }
+        polyhedron = objectReader.parse();
+      }
+      finally {
+        fileReader.close();
+      }
+
+      String binaryFilename = args[i] + BINARY_SUFFIX;
+      OutputStream out = new FileOutputStream(binaryFilename);
+      try {
+        write(polyhedron, out);
+      }
+      finally {
+        out.close();
+      }
+      System.out.println(args[i] + " -> " + binaryFilename + ": " +
+                         polyhedron.mesh.vertexCount + " vertices, " +
+                         polyhedron.mesh.faceCount + " faces");
+    }
+  }
+}
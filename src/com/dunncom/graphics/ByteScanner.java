@@ -0,0 +1,450 @@
+package com.dunncom.graphics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads a model file a line at a time and splits the lines into numbers,
+ * straight from a buffer of bytes, without making a String, a
+ * StringTokenizer or a Double for each line or number.
+ * <P>
+ * nextLine() moves on to the next line, which is then scanned with
+ * hasMoreTokens(), skipToken(), nextInt() and nextDouble().  Lines end at
+ * '\n', '\r' or "\r\n", as with BufferedReader.readLine(), and tokens are
+ * split on the same whitespace as StringTokenizer.  The whole of the
+ * current line is always in the buffer, which grows if a line doesn't
+ * fit.
+ * <P>
+ * Numbers are parsed in place when they are plain decimals that can be
+ * converted exactly, which covers the numbers in model files.  Anything
+ * else, such as a number with more than 18 digits, is handed to
+ * Double.parseDouble() or Integer.parseInt(), so the values, and the
+ * NumberFormatExceptions for bad numbers, are always the same as theirs.
+ *
+ * @author Thomas Dunn
+ */
+
+public class ByteScanner {
+
+  /**
+   * Size of the buffer to start with
+   */
+  static final int BUFFER_SIZE = 8192;
+
+  /**
+   * Exact powers of ten as doubles.  10^22 is the largest a double holds
+   * exactly.
+   */
+  private static final double POWERS_OF_TEN[] = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+    1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+    1e21, 1e22
+  };
+
+  /**
+   * Largest integer a double holds exactly, 2^53
+   */
+  private static final long EXACT_MANTISSA = 1L << 53;
+
+  private InputStream in;
+  private Reader reader;
+
+  /**
+   * For reading characters from reader before they are put in buffer
+   */
+  private char chars[];
+
+  private byte buffer[];
+
+  /**
+   * Number of bytes in buffer
+   */
+  private int limit;
+
+  /**
+   * Whether the end of the input has been read into buffer
+   */
+  private boolean eof;
+
+  /**
+   * Where the current line starts and ends in buffer, not counting the
+   * line terminator
+   */
+  private int lineStart;
+  private int lineEnd;
+
+  /**
+   * Where the line after the current one starts in buffer
+   */
+  private int nextLineStart;
+
+  /**
+   * Where scanning of the current line has got to
+   */
+  private int position;
+
+  /**
+   * Whether there is a current line
+   */
+  private boolean haveLine;
+
+  public ByteScanner(InputStream in) {
+    this.in = in;
+    buffer = new byte[BUFFER_SIZE];
+  }
+
+  /**
+   * Scans characters, which should be ASCII like all the model formats, as
+   * bytes
+   */
+  public ByteScanner(Reader reader) {
+    this.reader = reader;
+    buffer = new byte[BUFFER_SIZE];
+    chars = new char[BUFFER_SIZE];
+  }
+
+  /**
+   * Scans the lines of part of an array of bytes, which is used as is
+   * @param start where the first line starts
+   * @param end where the last line ends, after its line terminator if it
+   * has one
+   */
+  public ByteScanner(byte bytes[], int start, int end) {
+    buffer = bytes;
+    limit = end;
+    nextLineStart = start;
+    lineStart = lineEnd = position = start;
+    eof = true;
+  }
+
+  /**
+   * Reads the rest of the input into the buffer, so getBuffer() holds all
+   * of it from getLineStart() on.  Call before nextLine() or after it,
+   * but any offsets into the buffer from before are lost.
+   */
+  public void readAll() throws IOException {
+    if (! eof) {
+      fill(lineStart);
+      nextLineStart -= lineStart;
+      lineEnd -= lineStart;
+      position -= lineStart;
+      lineStart = 0;
+
+      // make room for what the stream says is left, rather than growing
+      // the buffer again and again
+      int available = in != null ? in.available() : 0;
+      if (limit + available >= buffer.length) {
+        byte newBuffer[] = new byte[limit + available + 1];
+        System.arraycopy(buffer, 0, newBuffer, 0, limit);
+        buffer = newBuffer;
+      }
+      while (! eof) {
+        fill(0);
+      }
+    }
+  }
+
+  /**
+   * Goes back to before the first line in the buffer.  Only useful after
+   * readAll(), or for a scanner of an array.
+   */
+  public void rewind() {
+    nextLineStart = 0;
+    lineStart = lineEnd = position = 0;
+    haveLine = false;
+  }
+
+  /**
+   * @return the buffer the lines are scanned from
+   */
+  public byte[] getBuffer() {
+    return buffer;
+  }
+
+  /**
+   * @return the number of bytes in the buffer
+   */
+  public int getLength() {
+    return limit;
+  }
+
+  /**
+   * @return where the current line starts in the buffer
+   */
+  public int getLineStart() {
+    return lineStart;
+  }
+
+  /**
+   * @return where the line after the current one starts in the buffer
+   */
+  public int getNextLineStart() {
+    return nextLineStart;
+  }
+
+  /**
+   * Moves on to the next line
+   * @return false if there are no more lines
+   */
+  public boolean nextLine() throws IOException {
+    int start = nextLineStart;
+    int end = start;
+    while (true) {
+      while (end < limit && buffer[end] != '\n' && buffer[end] != '\r') {
+        end++;
+      }
+      // a '\r' at the end of the buffer might be followed by a '\n'
+      if ((end < limit - 1 || (end < limit && buffer[end] == '\n')) || eof) {
+        break;
+      }
+
+      // the line doesn't all fit in what has been read, so read more
+      int scanned = end - start;
+      fill(start);
+      start = 0;
+      end = scanned;
+    }
+
+    if (start == limit) {
+      haveLine = false;
+      lineStart = lineEnd = position = nextLineStart = limit;
+      return false;
+    }
+
+    lineStart = start;
+    lineEnd = end;
+    position = start;
+    nextLineStart = end;
+    if (end < limit) {
+      nextLineStart++;
+      if (buffer[end] == '\r' && nextLineStart < limit && buffer[nextLineStart] == '\n') {
+        nextLineStart++;
+      }
+    }
+    haveLine = true;
+    return true;
+  }
+
+  /**
+   * Moves the bytes from start on to the front of the buffer, growing it
+   * if they fill it, and reads more after them
+   */
+  private void fill(int start) throws IOException {
+    int kept = limit - start;
+    byte target[] = buffer;
+    if (kept == buffer.length) {
+      target = new byte[buffer.length * 2];
+    }
+    System.arraycopy(buffer, start, target, 0, kept);
+    buffer = target;
+    limit = kept;
+
+    int n;
+    if (in != null) {
+      n = in.read(buffer, limit, buffer.length - limit);
+    }
+    else {
+      n = reader.read(chars, 0, Math.min(chars.length, buffer.length - limit));
+      for (int i = 0; i < n; i++) {
+        buffer[limit + i] = (byte) chars[i];
+      }
+    }
+    if (n < 0) {
+      eof = true;
+    }
+    else {
+      limit += n;
+    }
+  }
+
+  /**
+   * @return whether the current line is empty or only whitespace
+   */
+  public boolean isBlankLine() {
+    for (int i = lineStart; i < lineEnd; i++) {
+      if ((buffer[i] & 0xff) > ' ') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return whether the current line starts with "//", after any
+   * whitespace
+   */
+  public boolean isCommentLine() {
+    int i = lineStart;
+    while (i < lineEnd && (buffer[i] & 0xff) <= ' ') {
+      i++;
+    }
+    return i + 1 < lineEnd && buffer[i] == '/' && buffer[i + 1] == '/';
+  }
+
+  /**
+   * @return the first byte of the current line, or -1 if it is empty
+   */
+  public int firstByte() {
+    return lineStart < lineEnd ? buffer[lineStart] & 0xff : -1;
+  }
+
+  private static boolean isDelimiter(byte b) {
+    return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+  }
+
+  /**
+   * @return whether there are more tokens on the current line
+   */
+  public boolean hasMoreTokens() {
+    while (position < lineEnd && isDelimiter(buffer[position])) {
+      position++;
+    }
+    return position < lineEnd;
+  }
+
+  /**
+   * Moves past the next token on the current line
+   * @return where the token starts in the buffer
+   * @throws NoSuchElementException if there are no more tokens, as
+   * StringTokenizer does
+   */
+  private int token() {
+    if (! haveLine || ! hasMoreTokens()) {
+      throw new NoSuchElementException();
+    }
+    int start = position;
+    while (position < lineEnd && ! isDelimiter(buffer[position])) {
+      position++;
+    }
+    return start;
+  }
+
+  /**
+   * Moves past the next token on the current line
+   */
+  public void skipToken() {
+    token();
+  }
+
+  /**
+   * Parses the next token on the current line as an int, the same as
+   * Integer.parseInt()
+   */
+  public int nextInt() {
+    int start = token();
+    int end = position;
+    int i = start;
+    boolean negative = false;
+    if (buffer[i] == '-') {
+      negative = true;
+      i++;
+    }
+
+    // up to 9 digits can't overflow
+    if (i == end || end - i > 9) {
+      return Integer.parseInt(tokenString(start, end));
+    }
+    int value = 0;
+    for (; i < end; i++) {
+      int digit = buffer[i] - '0';
+      if (digit < 0 || digit > 9) {
+        return Integer.parseInt(tokenString(start, end));
+      }
+      value = value * 10 + digit;
+    }
+    return negative ? -value : value;
+  }
+
+  /**
+   * Parses the next token on the current line as a double, the same as
+   * Double.parseDouble()
+   */
+  public double nextDouble() {
+    int start = token();
+    int end = position;
+    int i = start;
+    boolean negative = false;
+    if (buffer[i] == '-' || buffer[i] == '+') {
+      negative = buffer[i] == '-';
+      i++;
+    }
+
+    // digits of the mantissa, with the decimal point left out
+    long mantissa = 0;
+    int digits = 0;
+    int fractionDigits = 0;
+    boolean point = false;
+    for (; i < end; i++) {
+      byte b = buffer[i];
+      if (b >= '0' && b <= '9') {
+        if (mantissa > (Long.MAX_VALUE - 9) / 10) {
+          return Double.parseDouble(tokenString(start, end));
+        }
+        mantissa = mantissa * 10 + (b - '0');
+        digits++;
+        if (point) {
+          fractionDigits++;
+        }
+      }
+      else if (b == '.' && ! point) {
+        point = true;
+      }
+      else {
+        break;
+      }
+    }
+    if (digits == 0) {
+      return Double.parseDouble(tokenString(start, end));
+    }
+
+    int exponent = 0;
+    if (i < end) {
+      if (buffer[i] != 'e' && buffer[i] != 'E') {
+        return Double.parseDouble(tokenString(start, end));
+      }
+      i++;
+      boolean negativeExponent = false;
+      if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+        negativeExponent = buffer[i] == '-';
+        i++;
+      }
+      if (i == end || end - i > 4) {
+        return Double.parseDouble(tokenString(start, end));
+      }
+      for (; i < end; i++) {
+        int digit = buffer[i] - '0';
+        if (digit < 0 || digit > 9) {
+          return Double.parseDouble(tokenString(start, end));
+        }
+        exponent = exponent * 10 + digit;
+      }
+      if (negativeExponent) {
+        exponent = -exponent;
+      }
+    }
+    exponent -= fractionDigits;
+
+    // a mantissa and power of ten that are both exact give a correctly
+    // rounded result from one multiply or divide, just as parseDouble's
+    double value;
+    if (mantissa == 0) {
+      value = 0.0;
+    }
+    else if (mantissa <= EXACT_MANTISSA && exponent >= 0 && exponent <= 22) {
+      value = mantissa * POWERS_OF_TEN[exponent];
+    }
+    else if (mantissa <= EXACT_MANTISSA && exponent < 0 && exponent >= -22) {
+      value = mantissa / POWERS_OF_TEN[-exponent];
+    }
+    else {
+      return Double.parseDouble(tokenString(start, end));
+    }
+    return negative ? -value : value;
+  }
+
+  private String tokenString(int start, int end) {
+    return new String(buffer, start, end - start);
+  }
+}
@@ -0,0 +1,224 @@
+package com.dunncom.graphics;
+
+/**
+ * Puts the faces of a mesh in order from farthest to nearest, by the depth
+ * of their centers, for drawing with the painter's algorithm.
+ * <P>
+ * The depths are turned into 16 bit keys and sorted with a two pass radix
+ * sort, so sorting takes time in proportion to the number of faces.  The
+ * order from the last frame is kept, and since a slowly turning object
+ * hardly changes order from frame to frame, an insertion sort of the old
+ * order is tried first, if a quick look at the old order shows few faces
+ * out of place.  If it turns out to be doing too much work anyway it is
+ * given up on and the radix sort is used.  All the arrays are reused from
+ * frame to frame, so nothing is allocated once they are big enough.
+ *
+ * @author Thomas Dunn
+ */
+
+public class DepthSorter {
+
+  /**
+   * Number of different depth keys
+   */
+  static final int KEYS = 1 << 16;
+
+  /**
+   * How many element moves per face the insertion sort may make before
+   * the radix sort is used instead
+   */
+  static final int INSERTION_MOVES_PER_FACE = 4;
+
+  /**
+   * The insertion sort is only tried if fewer than one in this many faces
+   * are nearer than the face after them in last frame's order
+   */
+  static final int FACES_PER_DESCENT = 32;
+
+  /**
+   * Face indices, farthest first after sort()
+   */
+  private int order[] = new int[0];
+
+  /**
+   * Depth key of each face, by face index.  Bigger keys are nearer.
+   */
+  private int keys[] = new int[0];
+
+  /**
+   * Second array for the radix sort to copy between
+   */
+  private int scratch[] = new int[0];
+
+  /**
+   * How many keys have each value of the current radix sort digit
+   */
+  private int counts[] = new int[256];
+
+  /**
+   * Number of faces order holds
+   */
+  private int faceCount;
+
+  /**
+   * Whether the last sort() used the insertion sort
+   */
+  private boolean coherent;
+
+  /**
+   * Sorts the faces of a mesh from farthest to nearest, smaller z being
+   * nearer
+   * @param mesh the mesh the faces come from
+   * @param z the depth of each vertex of the mesh
+   * @return the face indices in drawing order.  The array may be longer
+   * than the number of faces, and is reused by the next call.
+   */
+  public int[] sort(Mesh mesh, double z[]) {
+    int count = mesh.faceCount;
+    if (count != faceCount) {
+      resize(count);
+    }
+    if (count == 0) {
+      return order;
+    }
+
+    computeKeys(mesh, z);
+
+    coherent = countDescents() * FACES_PER_DESCENT < count &&
+               insertionSort(INSERTION_MOVES_PER_FACE * count);
+    if (! coherent) {
+      radixSort();
+    }
+    return order;
+  }
+
+  /**
+   * @return whether the last sort only needed the insertion sort, because
+   * the order had barely changed since the frame before
+   */
+  public boolean wasCoherent() {
+    return coherent;
+  }
+
+  private void resize(int count) {
+    if (order.length < count) {
+      order = new int[count];
+      keys = new int[count];
+      scratch = new int[count];
+    }
+    for (int i = 0; i < count; i++) {
+      order[i] = i;
+    }
+    faceCount = count;
+  }
+
+  /**
+   * Works out the depth of the center of each face and scales it into a
+   * key between 0 for the farthest and KEYS - 1 for the nearest
+   */
+  private void computeKeys(Mesh mesh, double z[]) {
+    int faceStart[] = mesh.faceStart;
+    int faceVertices[] = mesh.faceVertices;
+
+    // the centers of the faces are somewhere between the nearest and
+    // farthest vertices, so that is the range the keys are spread over
+    double nearest = Double.MAX_VALUE;
+    double farthest = -Double.MAX_VALUE;
+    int vertexCount = mesh.vertexCount;
+    for (int i = 0; i < vertexCount; i++) {
+      if (z[i] < nearest) {
+        nearest = z[i];
+      }
+      if (z[i] > farthest) {
+        farthest = z[i];
+      }
+    }
+    double scale = 0.0;
+    if (farthest > nearest) {
+      scale = (KEYS - 1) / (farthest - nearest);
+    }
+
+    for (int f = 0; f < faceCount; f++) {
+      int start = faceStart[f];
+      int end = faceStart[f + 1];
+      double total = 0.0;
+      for (int i = start; i < end; i++) {
+        total += z[faceVertices[i]];
+      }
+      double center = total / (end - start);
+      keys[f] = (int) ((farthest - center) * scale);
+    }
+  }
+
+  /**
+   * @return how many faces in order have a bigger key than the face after
+   * them
+   */
+  private int countDescents() {
+    int descents = 0;
+    int lastKey = keys[order[0]];
+    for (int i = 1; i < faceCount; i++) {
+      int key = keys[order[i]];
+      if (key < lastKey) {
+        descents++;
+      }
+      lastKey = key;
+    }
+    return descents;
+  }
+
+  /**
+   * Insertion sorts order by key, starting from last frame's order
+   * @param moveBudget most element moves to make
+   * @return true if order got sorted, false if the budget ran out first
+   */
+  private boolean insertionSort(int moveBudget) {
+    int moves = 0;
+    for (int i = 1; i < faceCount; i++) {
+      int face = order[i];
+      int key = keys[face];
+      int j = i - 1;
+      while (j >= 0 && keys[order[j]] > key) {
+        order[j + 1] = order[j];
+        j--;
+        moves++;
+      }
+      order[j + 1] = face;
+      if (moves > moveBudget) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Sorts order by key, low byte then high byte.  Each pass is stable, so
+   * faces with the same key stay in last frame's order.
+   */
+  private void radixSort() {
+    radixPass(order, scratch, 0);
+    radixPass(scratch, order, 8);
+  }
+
+  private void radixPass(int from[], int to[], int shift) {
+    for (int i = 0; i < 256; i++) {
+      counts[i] = 0;
+    }
+    for (int i = 0; i < faceCount; i++) {
+      counts[(keys[from[i]] >> shift) & 0xff]++;
+    }
+
+    // turn the counts into starting positions
+    int position = 0;
+    for (int i = 0; i < 256; i++) {
+      int count = counts[i];
+      counts[i] = position;
+      position += count;
+    }
+
+    for (int i = 0; i < faceCount; i++) {
+      int face = from[i];
+      to[counts[(keys[face] >> shift) & 0xff]++] = face;
+    }
+  }
+}
@@ -0,0 +1,284 @@
+package com.dunncom.graphics;
+
+/**
+ * Runs an animation at a steady frame rate on a thread of its own.
+ * <P>
+ * Each tick the animation is moved on by however much time has really
+ * passed, so it goes at the same speed however long frames take to draw,
+ * and then a new frame is asked for.  If the last frame asked for has not
+ * been drawn yet, no new one is asked for, so a slow frame doesn't leave
+ * a queue of frames behind it; the tick is counted as skipped instead.
+ * The animation tells the scheduler when it has drawn a frame with
+ * frameDrawn(), which is also how the frame rate and frame times are
+ * measured.
+ * <P>
+ * Only one thread ever runs the animation, however many times start() is
+ * called.
+ *
+ * @author Thomas Dunn
+ */
+
+public class FrameScheduler implements Runnable {
+
+  /**
+   * Something animated by a FrameScheduler
+   */
+  public interface Animation {
+    /**
+     * Moves the animation on in time
+     * @param millis milliseconds since the last call
+     */
+    void advance(long millis);
+
+    /**
+     * Asks for the animation to be drawn as it is now, such as by calling
+     * repaint().  The drawing should end with a call to frameDrawn().
+     */
+    void requestFrame();
+  }
+
+  /**
+   * How many frame periods a frame can be waited for before it is asked
+   * for again, in case the request got lost
+   */
+  static final int STALE_FRAME_PERIODS = 10;
+
+  /**
+   * How often the frame rate and frame times are worked out
+   */
+  static final long STATISTICS_MILLIS = 1000;
+
+  private Animation animation;
+
+  /**
+   * Frames per second to aim for
+   */
+  private int targetFrameRate;
+
+  /**
+   * The thread running the animation, null when stopped.  A thread that
+   * finds it isn't this one any more stops.
+   */
+  private Thread thread;
+
+  /**
+   * The last thread stopped, which may still be finishing its tick
+   */
+  private Thread stoppedThread;
+
+  /**
+   * When the frame waiting to be drawn was asked for, or -1 if there isn't
+   * one
+   */
+  private long frameRequestedAt = -1;
+
+  // counts for the statistics period in progress
+  private long periodStart;
+  private int periodFrames;
+  private long periodFrameMillis;
+  private long periodMaxFrameMillis;
+
+  // statistics from the last complete period
+  private double framesPerSecond;
+  private double averageFrameMillis;
+  private long maxFrameMillis;
+
+  private int framesDrawn;
+  private int framesSkipped;
+
+  public FrameScheduler(Animation animation, int targetFrameRate) {
+    this.animation = animation;
+    setTargetFrameRate(targetFrameRate);
+    periodStart = System.currentTimeMillis();
+  }
+
+  /**
+   * Starts the animation, unless it is already running
+   */
+  public void start() {
+    Thread stopped;
+    synchronized (this) {
+      if (thread != null) {
+        return;
+      }
+      stopped = stoppedThread;
+    }
+
+    // let a thread that was just stopped finish its tick first, so two
+    // threads never run the animation at once
+    if (stopped != null && stopped != Thread.currentThread()) {
+      try {
+        stopped.join();
+      }
+      catch (InterruptedException ie) {}
+    }
+
+    synchronized (this) {
+      if (thread != null) {
+        return;
+      }
+      stoppedThread = null;
+      thread = new Thread(this, "FrameScheduler");
+      thread.start();
+    }
+  }
+
+  /**
+   * Stops the animation.  The thread finishes the tick it is on, if any.
+   */
+  public synchronized void stop() {
+    if (thread != null) {
+      stoppedThread = thread;
+      thread = null;
+    }
+    notifyAll();
+  }
+
+  public synchronized boolean isRunning() {
+    return thread != null;
+  }
+
+  public synchronized int getTargetFrameRate() {
+    return targetFrameRate;
+  }
+
+  public synchronized void setTargetFrameRate(int targetFrameRate) {
+    this.targetFrameRate = Math.max(targetFrameRate, 1);
+    notifyAll();
+  }
+
+  /**
+   * Runs the animation until stop() is called
+   */
+  public void run() {
+    Thread me = Thread.currentThread();
+    long last = System.currentTimeMillis();
+    long next = last;
+
+    while (true) {
+      synchronized (this) {
+        long period = 1000 / targetFrameRate;
+        next += period;
+        long now = System.currentTimeMillis();
+        if (next < now) {
+          // too far behind to catch up, so start the schedule from now
+          next = now;
+        }
+        while (thread == me && now < next) {
+          try {
+            wait(next - now);
+          }
+          catch (InterruptedException ie) {}
+          now = System.currentTimeMillis();
+        }
+        if (thread != me) {
+          return;
+        }
+      }
+
+      long now = System.currentTimeMillis();
+      try {
+        animation.advance(now - last);
+        if (shouldRequestFrame(now)) {
+          animation.requestFrame();
+        }
+      }
+      catch (RuntimeException re) {
+        System.out.println("Caught RuntimeException in FrameScheduler in run()");
+        System.out.println(re);
+        re.printStackTrace();
+      }
+      last = now;
+    }
+  }
+
+  /**
+   * @return whether to ask for a new frame, false if the last one is still
+   * waiting to be drawn
+   */
+  private synchronized boolean shouldRequestFrame(long now) {
+    if (frameRequestedAt >= 0 &&
+        now - frameRequestedAt < STALE_FRAME_PERIODS * 1000 / targetFrameRate) {
+      framesSkipped++;
+      return false;
+    }
+    frameRequestedAt = now;
+    return true;
+  }
+
+  /**
+   * Tells the scheduler a frame has been drawn
+   * @param frameMillis how long the frame took to draw
+   */
+  public synchronized void frameDrawn(long frameMillis) {
+    frameRequestedAt = -1;
+    framesDrawn++;
+
+    periodFrames++;
+    periodFrameMillis += frameMillis;
+    periodMaxFrameMillis = Math.max(periodMaxFrameMillis, frameMillis);
+
+    long now = System.currentTimeMillis();
+    long elapsed = now - periodStart;
+    if (elapsed >= STATISTICS_MILLIS) {
+      framesPerSecond = periodFrames * 1000.0 / elapsed;
+      averageFrameMillis = (double) periodFrameMillis / periodFrames;
+      maxFrameMillis = periodMaxFrameMillis;
+      periodStart = now;
+      periodFrames = 0;
+      periodFrameMillis = 0;
+      periodMaxFrameMillis = 0;
+    }
+  }
+
+  /**
+   * @return frames drawn per second, over the last second or so
+   */
+  public synchronized double getFramesPerSecond() {
+    return framesPerSecond;
+  }
+
+  /**
+   * @return the average time frames took to draw, over the last second or
+   * so
+   */
+  public synchronized double getAverageFrameMillis() {
+    return averageFrameMillis;
+  }
+
+  /**
+   * @return the longest time a frame took to draw, over the last second or
+   * so
+   */
+  public synchronized long getMaxFrameMillis() {
+    return maxFrameMillis;
+  }
+
+  /**
+   * @return how many frames have been drawn altogether
+   */
+  public synchronized int getFramesDrawn() {
+    return framesDrawn;
+  }
+
+  /**
+   * @return how many ticks went by without asking for a frame, because the
+   * last one hadn't been drawn yet
+   */
+  public synchronized int getFramesSkipped() {
+    return framesSkipped;
+  }
+
+  /**
+   * returns string to look like:
+   * <pre>
+   * 20.0 fps, 3.5 ms/frame, 7 ms max, 2 skipped
+   * </pre>
+   */
+  public synchronized String toString() {
+    return (Math.round(framesPerSecond * 10) / 10.0) + " fps, " +
+           (Math.round(averageFrameMillis * 10) / 10.0) + " ms/frame, " +
+           maxFrameMillis + " ms max, " +
+           framesSkipped + " skipped";
+  }
+}
@@ -0,0 +1,269 @@
+package com.dunncom.graphics;
+
+import java.util.Arrays;
+
+/**
+ * Times each stage of drawing a frame, and keeps the times of the last
+ * WINDOW frames, for the median and 99th percentile frame times and the
+ * average time of each stage.  Also keeps how many faces the last frame
+ * drew and how many it culled as facing away.
+ * <P>
+ * The drawing thread calls startFrame(), then stageDone() as each stage
+ * finishes, which times the stage from the end of the one before or the
+ * last mark(), and endFrame() when the frame is on screen.  Anything
+ * between stages that should not count toward the next one, such as
+ * writing the credits, is left out by calling mark() after it.  Only the
+ * drawing thread times frames, but the results can be asked for from any
+ * thread.
+ * <P>
+ * Times come from System.nanoTime(), since most stages take well under a
+ * millisecond.  register() makes the results visible through JMX, as a
+ * FrameTimingMBean.
+ *
+ * @author Thomas Dunn
+ */
+
+public class FrameTiming implements FrameTimingMBean {
+
+  /**
+   * The stages of a frame: transforming the vertices to the screen,
+   * computing face normals when the mesh has changed, shading the faces,
+   * drawing the object into an image, and copying the image to the screen
+   */
+  public static final int TRANSFORM = 0;
+  public static final int NORMALS = 1;
+  public static final int SHADE = 2;
+  public static final int DRAW = 3;
+  public static final int BLIT = 4;
+
+  public static final String STAGE_NAMES[] = {"transform", "normals", "shade", "draw", "blit"};
+
+  /**
+   * Number of frames the statistics are taken over
+   */
+  public static final int WINDOW = 128;
+
+  /**
+   * What register() calls this in JMX
+   */
+  public static final String OBJECT_NAME = "com.dunncom.graphics:type=FrameTiming";
+
+  // the frame being timed, only touched by the drawing thread
+  private long frameStart;
+  private long lastMark;
+  private long currentStageNanos[] = new long[STAGE_NAMES.length];
+
+  /**
+   * Times of the last WINDOW frames, and of each of their stages, with
+   * the next frame going at next
+   */
+  private long frameNanos[] = new long[WINDOW];
+  private long stageNanos[][] = new long[STAGE_NAMES.length][WINDOW];
+  private int next;
+
+  private int frameCount;
+  private int facesDrawn;
+  private int facesCulled;
+
+  /**
+   * For sorting the frame times without making a new array each time
+   */
+  private long sortedNanos[] = new long[WINDOW];
+
+  /**
+   * The name this is registered under in JMX, an ObjectName, or null
+   */
+  private Object registeredName;
+
+  /**
+   * Starts timing a frame
+   */
+  public void startFrame() {
+    frameStart = System.nanoTime();
+    lastMark = frameStart;
+    for (int i = 0; i < currentStageNanos.length; i++) {
+      currentStageNanos[i] = 0;
+    }
+  }
+
+  /**
+   * Starts the time for the next stage from now
+   */
+  public void mark() {
+    lastMark = System.nanoTime();
+  }
+
+  /**
+   * Adds the time since the last stage or mark() to a stage of the frame
+   * @param stage one of TRANSFORM, NORMALS, SHADE, DRAW and BLIT
+   */
+  public void stageDone(int stage) {
+    long now = System.nanoTime();
+    currentStageNanos[stage] += now - lastMark;
+    lastMark = now;
+  }
+
+  /**
+   * Finishes timing a frame
+   * @param drawn how many faces were drawn
+   * @param culled how many faces weren't drawn because they faced away
+   */
+  public synchronized void endFrame(int drawn, int culled) {
+    frameNanos[next] = System.nanoTime() - frameStart;
+    for (int i = 0; i < currentStageNanos.length; i++) {
+      stageNanos[i][next] = currentStageNanos[i];
+    }
+    next = (next + 1) % WINDOW;
+    frameCount++;
+    facesDrawn = drawn;
+    facesCulled = culled;
+  }
+
+  /**
+   * @return how many frames have been timed altogether
+   */
+  public synchronized int getFrameCount() {
+    return frameCount;
+  }
+
+  /**
+   * @return the time within which a fraction of the recent frames were
+   * drawn, in milliseconds, 0 if none have been
+   */
+  public synchronized double percentileFrameMillis(double fraction) {
+    int count = Math.min(frameCount, WINDOW);
+    if (count == 0) {
+      return 0.0;
+    }
+    System.arraycopy(frameNanos, 0, sortedNanos, 0, count);
+    Arrays.sort(sortedNanos, 0, count);
+    int rank = (int) Math.ceil(fraction * count) - 1;
+    return sortedNanos[Math.max(rank, 0)] / 1e6;
+  }
+
+  public double getP50FrameMillis() {
+    return percentileFrameMillis(0.5);
+  }
+
+  public double getP99FrameMillis() {
+    return percentileFrameMillis(0.99);
+  }
+
+  /**
+   * @return the average time of a stage over the recent frames, in
+   * milliseconds
+   */
+  public synchronized double averageStageMillis(int stage) {
+    int count = Math.min(frameCount, WINDOW);
+    if (count == 0) {
+      return 0.0;
+    }
+    long total = 0;
+    for (int i = 0; i < count; i++) {
+      total += stageNanos[stage][i];
+    }
+    return total / 1e6 / count;
+  }
+
+  public double getTransformMillis() {
+    return averageStageMillis(TRANSFORM);
+  }
+
+  public double getNormalsMillis() {
+    return averageStageMillis(NORMALS);
+  }
+
+  public double getShadeMillis() {
+    return averageStageMillis(SHADE);
+  }
+
+  public double getDrawMillis() {
+    return averageStageMillis(DRAW);
+  }
+
+  public double getBlitMillis() {
+    return averageStageMillis(BLIT);
+  }
+
+  /**
+   * @return how many faces the last frame drew
+   */
+  public synchronized int getFacesDrawn() {
+    return facesDrawn;
+  }
+
+  /**
+   * @return how many faces the last frame culled as facing away
+   */
+  public synchronized int getFacesCulled() {
+    return facesCulled;
+  }
+
+  /**
+   * Makes this visible through JMX as OBJECT_NAME.  Does nothing but say
+   * so if it can't be, such as in an applet sandbox or on a VM older than
+   * 1.5.
+   * @return whether it was registered
+   */
+  public synchronized boolean register() {
+    try {
+      javax.management.ObjectName name = new javax.management.ObjectName(OBJECT_NAME);
+      java.lang.management.ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+      registeredName = name;
+      return true;
+    }
+    catch (Throwable t) {
+      System.out.println("FrameTiming not registered with JMX: " + t);
+      return false;
+    }
+  }
+
+  /**
+   * Takes this out of JMX again, if register() put it there
+   */
+  public synchronized void unregister() {
+    if (registeredName == null) {
+      return;
+    }
+    try {
+      java.lang.management.ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+        (javax.management.ObjectName) registeredName);
+    }
+    catch (Throwable t) {
+      System.out.println("Caught Throwable in FrameTiming in unregister()");
+      System.out.println(t);
+    }
+    registeredName = null;
+  }
+
+  /**
+   * returns string to look like:
+   * <pre>
+   * transform 0.12  normals 0.0  shade 0.08  draw 3.2  blit 0.4 ms
+   * </pre>
+   */
+  public String stagesToString() {
+    StringBuffer buffer = new StringBuffer();
+    for (int i = 0; i < STAGE_NAMES.length; i++) {
+      buffer.append(STAGE_NAMES[i]).append(' ').append(round(averageStageMillis(i))).append("  ");
+    }
+    buffer.setLength(buffer.length() - 1);
+    return buffer.append("ms").toString();
+  }
+
+  /**
+   * returns string to look like:
+   * <pre>
+   * frame p50 4.1 ms, p99 6.3 ms, 3020 faces drawn, 3064 culled
+   * </pre>
+   */
+  public synchronized String toString() {
+    return "frame p50 " + round(getP50FrameMillis()) + " ms, p99 " +
+           round(getP99FrameMillis()) + " ms, " + facesDrawn + " faces drawn, " +
+           facesCulled + " culled";
+  }
+
+  private static double round(double millis) {
+    return Math.round(millis * 100) / 100.0;
+  }
+}
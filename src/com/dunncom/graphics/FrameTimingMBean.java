@@ -0,0 +1,22 @@
+package com.dunncom.graphics;
+
+/**
+ * What FrameTiming shows through JMX, for watching the viewer from
+ * outside, such as with jconsole.  Times are in milliseconds, over the
+ * last FrameTiming.WINDOW frames.
+ *
+ * @author Thomas Dunn
+ */
+
+public interface FrameTimingMBean {
+  int getFrameCount();
+  double getP50FrameMillis();
+  double getP99FrameMillis();
+  double getTransformMillis();
+  double getNormalsMillis();
+  double getShadeMillis();
+  double getDrawMillis();
+  double getBlitMillis();
+  int getFacesDrawn();
+  int getFacesCulled();
+}
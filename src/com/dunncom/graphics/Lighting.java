@@ -0,0 +1,132 @@
+package com.dunncom.graphics;
+
+import java.awt.Color;
+
+/**
+ * The two lights a Polyhedron is shaded by, and the shading of its faces
+ * from them.
+ * <P>
+ * Rather than turning every face normal into view space to light it,
+ * prepare() turns the lights back into model space once a frame, and
+ * shade() dots them against the unit normals kept in the Mesh.  The
+ * brightness of a face is turned into one of LEVELS grey levels, whose
+ * Colors are made once and shared, so shading a frame makes no new
+ * objects.
+ *
+ * @author Thomas Dunn
+ */
+
+public class Lighting {
+
+  /**
+   * Number of grey levels a face can be shaded
+   */
+  public static final int LEVELS = 256;
+
+  /**
+   * The Color of each grey level, black first
+   */
+  private static Color greys[];
+
+  /**
+   * The RGB value of each grey level
+   */
+  private static int greyRGBs[];
+
+  static {
+    greys = new Color[LEVELS];
+    greyRGBs = new int[LEVELS];
+    for (int i = 0; i < LEVELS; i++) {
+      greys[i] = new Color(i, i, i);
+      greyRGBs[i] = greys[i].getRGB();
+    }
+  }
+
+  /**
+   * The light 1 unit vector in view space, from right and in front of
+   */
+  private Point3D light1 = new Point3D(1, 0, 1);
+
+  /**
+   * The light 2 unit vector in view space, from slightly left and in
+   * front of
+   */
+  private Point3D light2 = new Point3D(-.3, 0, 1);
+
+  /**
+   * The average of the two lights, turned into model space by prepare().
+   * A face is lit by the average of I1 = L1.N and I2 = L2.N, which is the
+   * same as this dotted with N.
+   */
+  private Point3D modelLight = new Point3D();
+
+  public Lighting() {
+    Point3D.normalizeVector(light1);
+    Point3D.normalizeVector(light2);
+    prepare(null);
+  }
+
+  public void setLight1(Point3D p) {
+    light1 = new Point3D(p.x, p.y, p.z);
+    Point3D.normalizeVector(light1);
+  }
+
+  public void setLight2(Point3D p) {
+    light2 = new Point3D(p.x, p.y, p.z);
+    Point3D.normalizeVector(light2);
+  }
+
+  /**
+   * Turns the lights into the model space of a polyhedron viewed through
+   * the given matrix.  Call before shade() whenever the view or the lights
+   * change.
+   * @param view the view matrix, or null if the model is viewed as is
+   */
+  public void prepare(Matrix3D view) {
+    modelLight.x = (light1.x + light2.x) / 2;
+    modelLight.y = (light1.y + light2.y) / 2;
+    modelLight.z = (light1.z + light2.z) / 2;
+    if (view != null) {
+      view.inverseTransformNormal(modelLight);
+    }
+  }
+
+  /**
+   * Works out the grey level of a range of faces of a mesh, from the unit
+   * normals made by Mesh.computeFaceNormals()
+   * @param start first face to shade
+   * @param end one past the last face to shade
+   * @param levels where to put the grey level of each face, by face
+   * index, as a byte to be read back with & 0xff
+   */
+  public void shade(Mesh mesh, int start, int end, byte levels[]) {
+    // the normals are floats, and working in floats saves turning each
+    // of them into a double
+    float lightX = (float) modelLight.x;
+    float lightY = (float) modelLight.y;
+    float lightZ = (float) modelLight.z;
+    float normalX[] = mesh.normalX;
+    float normalY[] = mesh.normalY;
+    float normalZ[] = mesh.normalZ;
+
+    for (int f = start; f < end; f++) {
+      float I = (lightX * normalX[f]) + (lightY * normalY[f]) + (lightZ * normalZ[f]);
+      int level = (int) (Math.abs(I) * (LEVELS - 1));
+      levels[f] = (byte) (level < LEVELS ? level : LEVELS - 1);
+    }
+  }
+
+  /**
+   * @return the Color of a grey level
+   */
+  public static Color getColor(int level) {
+    return greys[level];
+  }
+
+  /**
+   * @return the RGB value of a grey level, as Color.getRGB() gives it
+   */
+  public static int getRGB(int level) {
+    return greyRGBs[level];
+  }
+}
@@ -10,16 +10,23 @@ package com.dunncom.graphics;
 
 public class Matrix3D {
 
-  private double[][] matrix;
+  /**
+   * The 16 entries of the matrix, one row after another, so the entry in
+   * row i and column j is matrix[(4 * i) + j]
+   */
+  private double[] matrix;
+
+  /**
+   * Faster loop for transformCoordinates() with affine matrices, or null
+   * to use the loop here
+   */
+  private static TransformKernel transformKernel = loadTransformKernel();
 
   /**
    * Create a new 4x4 zero matrix
    */
   public Matrix3D() {
-    matrix = new double[4][];
-    for (int i = 0; i < 4; i++) {
-      matrix[i] = new double[4];
-    }
+    matrix = new double[16];
   }
 
   /**
@@ -36,25 +43,25 @@ public class Matrix3D {
    */
   public static Matrix3D createUnitMatrix() {
     Matrix3D matrix = new Matrix3D();
-    matrix.matrix[0][0] = 1.0;
-    matrix.matrix[0][1] = 1.0;
-    matrix.matrix[0][2] = 1.0;
-    matrix.matrix[0][3] = 1.0;
-
-    matrix.matrix[1][0] = 1.0;
-    matrix.matrix[1][1] = 1.0;
-    matrix.matrix[1][2] = 1.0;
-    matrix.matrix[1][3] = 1.0;
-
-    matrix.matrix[2][0] = 1.0;
-    matrix.matrix[2][1] = 1.0;
-    matrix.matrix[2][2] = 1.0;
-    matrix.matrix[2][3] = 1.0;
-
-    matrix.matrix[3][0] = 1.0;
-    matrix.matrix[3][1] = 1.0;
-    matrix.matrix[3][2] = 1.0;
-    matrix.matrix[3][3] = 1.0;
+    matrix.matrix[0] = 1.0;
+    matrix.matrix[1] = 0.0;
+    matrix.matrix[2] = 0.0;
+    matrix.matrix[3] = 0.0;
+
+    matrix.matrix[4] = 0.0;
+    matrix.matrix[5] = 1.0;
+    matrix.matrix[6] = 0.0;
+    matrix.matrix[7] = 0.0;
+
+    matrix.matrix[8] = 0.0;
+    matrix.matrix[9] = 0.0;
+    matrix.matrix[10] = 1.0;
+    matrix.matrix[11] = 0.0;
+
+    matrix.matrix[12] = 0.0;
+    matrix.matrix[13] = 0.0;
+    matrix.matrix[14] = 0.0;
+    matrix.matrix[15] = 1.0;
 
     return matrix;
   }
@@ -68,25 +75,25 @@ public class Matrix3D {
    */
   public static Matrix3D createTranslationMatrix(double tx, double ty, double tz) {
     Matrix3D matrix = new Matrix3D();
-    matrix.matrix[0][0] = 1.0;
-    matrix.matrix[0][1] = 0.0;
-    matrix.matrix[0][2] = 0.0;
-    matrix.matrix[0][3] = tx;
-
-    matrix.matrix[1][0] = 0.0;
-    matrix.matrix[1][1] = 1.0;
-    matrix.matrix[1][2] = 0.0;
-    matrix.matrix[1][3] = ty;
-
-    matrix.matrix[2][0] = 0.0;
-    matrix.matrix[2][1] = 0.0;
-    matrix.matrix[2][2] = 1.0;
-    matrix.matrix[2][3] = tz;
-
-    matrix.matrix[3][0] = 0.0;
-    matrix.matrix[3][1] = 0.0;
-    matrix.matrix[3][2] = 0.0;
-    matrix.matrix[3][3] = 1.0;
+    matrix.matrix[0] = 1.0;
+    matrix.matrix[1] = 0.0;
+    matrix.matrix[2] = 0.0;
+    matrix.matrix[3] = tx;
+
+    matrix.matrix[4] = 0.0;
+    matrix.matrix[5] = 1.0;
+    matrix.matrix[6] = 0.0;
+    matrix.matrix[7] = ty;
+
+    matrix.matrix[8] = 0.0;
+    matrix.matrix[9] = 0.0;
+    matrix.matrix[10] = 1.0;
+    matrix.matrix[11] = tz;
+
+    matrix.matrix[12] = 0.0;
+    matrix.matrix[13] = 0.0;
+    matrix.matrix[14] = 0.0;
+    matrix.matrix[15] = 1.0;
 
     return matrix;
   }
@@ -100,25 +107,25 @@ public class Matrix3D {
    */
   public static Matrix3D createScalingMatrix(double sx, double sy, double sz) {
     Matrix3D matrix = new Matrix3D();
-    matrix.matrix[0][0] = sx;
-    matrix.matrix[0][1] = 0.0;
-    matrix.matrix[0][2] = 0.0;
-    matrix.matrix[0][3] = 0.0;
-
-    matrix.matrix[1][0] = 0.0;
-    matrix.matrix[1][1] = sy;
-    matrix.matrix[1][2] = 0.0;
-    matrix.matrix[1][3] = 0.0;
-
-    matrix.matrix[2][0] = 0.0;
-    matrix.matrix[2][1] = 0.0;
-    matrix.matrix[2][2] = sz;
-    matrix.matrix[2][3] = 0.0;
-
-    matrix.matrix[3][0] = 0.0;
-    matrix.matrix[3][1] = 0.0;
-    matrix.matrix[3][2] = 0.0;
-    matrix.matrix[3][3] = 1.0;
+    matrix.matrix[0] = sx;
+    matrix.matrix[1] = 0.0;
+    matrix.matrix[2] = 0.0;
+    matrix.matrix[3] = 0.0;
+
+    matrix.matrix[4] = 0.0;
+    matrix.matrix[5] = sy;
+    matrix.matrix[6] = 0.0;
+    matrix.matrix[7] = 0.0;
+
+    matrix.matrix[8] = 0.0;
+    matrix.matrix[9] = 0.0;
+    matrix.matrix[10] = sz;
+    matrix.matrix[11] = 0.0;
+
+    matrix.matrix[12] = 0.0;
+    matrix.matrix[13] = 0.0;
+    matrix.matrix[14] = 0.0;
+    matrix.matrix[15] = 1.0;
 
     return matrix;
   }
@@ -130,25 +137,25 @@ public class Matrix3D {
    */
   public static Matrix3D createXRotationMatrix(double theta) {
     Matrix3D matrix = new Matrix3D();
-    matrix.matrix[0][0] = 1.0;
-    matrix.matrix[0][1] = 0.0;
-    matrix.matrix[0][2] = 0.0;
-    matrix.matrix[0][3] = 0.0;
-
-    matrix.matrix[1][0] = 0.0;
-    matrix.matrix[1][1] = Math.cos(theta);
-    matrix.matrix[1][2] = -Math.sin(theta);
-    matrix.matrix[1][3] = 0.0;
-
-    matrix.matrix[2][0] = 0.0;
-    matrix.matrix[2][1] = Math.sin(theta);
-    matrix.matrix[2][2] = Math.cos(theta);
-    matrix.matrix[2][3] = 0.0;
-
-    matrix.matrix[3][0] = 0.0;
-    matrix.matrix[3][1] = 0.0;
-    matrix.matrix[3][2] = 0.0;
-    matrix.matrix[3][3] = 1.0;
+    matrix.matrix[0] = 1.0;
+    matrix.matrix[1] = 0.0;
+    matrix.matrix[2] = 0.0;
+    matrix.matrix[3] = 0.0;
+
+    matrix.matrix[4] = 0.0;
+    matrix.matrix[5] = Math.cos(theta);
+    matrix.matrix[6] = -Math.sin(theta);
+    matrix.matrix[7] = 0.0;
+
+    matrix.matrix[8] = 0.0;
+    matrix.matrix[9] = Math.sin(theta);
+    matrix.matrix[10] = Math.cos(theta);
+    matrix.matrix[11] = 0.0;
+
+    matrix.matrix[12] = 0.0;
+    matrix.matrix[13] = 0.0;
+    matrix.matrix[14] = 0.0;
+    matrix.matrix[15] = 1.0;
 
     return matrix;
   }
@@ -160,25 +167,25 @@ public class Matrix3D {
    */
   public static Matrix3D createYRotationMatrix(double theta) {
     Matrix3D matrix = new Matrix3D();
-    matrix.matrix[0][0] = Math.cos(theta);
-    matrix.matrix[0][1] = 0.0;
-    matrix.matrix[0][2] = Math.sin(theta);
-    matrix.matrix[0][3] = 0.0;
-
-    matrix.matrix[1][0] = 0.0;
-    matrix.matrix[1][1] = 1.0;
-    matrix.matrix[1][2] = 0.0;
-    matrix.matrix[1][3] = 0.0;
-
-    matrix.matrix[2][0] = -Math.sin(theta);
-    matrix.matrix[2][1] = 0.0;
-    matrix.matrix[2][2] = Math.cos(theta);
-    matrix.matrix[2][3] = 0.0;
-
-    matrix.matrix[3][0] = 0.0;
-    matrix.matrix[3][1] = 0.0;
-    matrix.matrix[3][2] = 0.0;
-    matrix.matrix[3][3] = 1.0;
+    matrix.matrix[0] = Math.cos(theta);
+    matrix.matrix[1] = 0.0;
+    matrix.matrix[2] = Math.sin(theta);
+    matrix.matrix[3] = 0.0;
+
+    matrix.matrix[4] = 0.0;
+    matrix.matrix[5] = 1.0;
+    matrix.matrix[6] = 0.0;
+    matrix.matrix[7] = 0.0;
+
+    matrix.matrix[8] = -Math.sin(theta);
+    matrix.matrix[9] = 0.0;
+    matrix.matrix[10] = Math.cos(theta);
+    matrix.matrix[11] = 0.0;
+
+    matrix.matrix[12] = 0.0;
+    matrix.matrix[13] = 0.0;
+    matrix.matrix[14] = 0.0;
+    matrix.matrix[15] = 1.0;
 
     return matrix;
   }
@@ -190,24 +197,24 @@ public class Matrix3D {
    */
   public static Matrix3D createZRotationMatrix(double theta) {
     Matrix3D matrix = new Matrix3D();
-    matrix.matrix[0][0] = Math.cos(theta);
-    matrix.matrix[0][1] = -Math.sin(theta);
-    matrix.matrix[0][2] = 0.0;
-    matrix.matrix[0][3] = 0.0;
-    matrix.matrix[1][0] = Math.sin(theta);
-    matrix.matrix[1][1] = Math.cos(theta);
-    matrix.matrix[1][2] = 0.0;
-    matrix.matrix[1][3] = 0.0;
-
-    matrix.matrix[2][0] = 0.0;
-    matrix.matrix[2][1] = 0.0;
-    matrix.matrix[2][2] = 1.0;
-    matrix.matrix[2][3] = 0.0;
-
-    matrix.matrix[3][0] = 0.0;
-    matrix.matrix[3][1] = 0.0;
-    matrix.matrix[3][2] = 0.0;
-    matrix.matrix[3][3] = 1.0;
+    matrix.matrix[0] = Math.cos(theta);
+    matrix.matrix[1] = -Math.sin(theta);
+    matrix.matrix[2] = 0.0;
+    matrix.matrix[3] = 0.0;
+    matrix.matrix[4] = Math.sin(theta);
+    matrix.matrix[5] = Math.cos(theta);
+    matrix.matrix[6] = 0.0;
+    matrix.matrix[7] = 0.0;
+
+    matrix.matrix[8] = 0.0;
+    matrix.matrix[9] = 0.0;
+    matrix.matrix[10] = 1.0;
+    matrix.matrix[11] = 0.0;
+
+    matrix.matrix[12] = 0.0;
+    matrix.matrix[13] = 0.0;
+    matrix.matrix[14] = 0.0;
+    matrix.matrix[15] = 1.0;
 
     return matrix;
   }
@@ -222,20 +229,60 @@ public class Matrix3D {
                                                        double thetaX,
                                                        double thetaY,
                                                        double thetaZ) {
-    Matrix3D transNeg = Matrix3D.createTranslationMatrix(-p.x, -p.y, -p.z);
-    Matrix3D rotateX = Matrix3D.createXRotationMatrix(thetaX);
-    Matrix3D rotateY = Matrix3D.createYRotationMatrix(thetaY);
-    Matrix3D rotateZ = Matrix3D.createZRotationMatrix(thetaZ);
-    Matrix3D transPos = Matrix3D.createTranslationMatrix(p.x, p.y, p.z);
-
-    Matrix3D composite = Matrix3D.mult(rotateZ, transNeg);
-    composite = Matrix3D.mult(rotateY, composite);
-    composite = Matrix3D.mult(rotateX, composite);
-    composite = Matrix3D.mult(transPos, composite);
-
+    Matrix3D composite = new Matrix3D();
+    composite.setRotateAroundPoint(p, thetaX, thetaY, thetaZ);
     return composite;
   }
 
+  /**
+   * Makes this matrix a "Rotation Around Point p" matrix, the same as
+   * createRotateAroundPointMatrix() gives, without creating the
+   * translation and rotation matrices it is made from
+   * @param p a Point object to rotate around
+   */
+  public void setRotateAroundPoint(Point3D p,
+                                   double thetaX,
+                                   double thetaY,
+                                   double thetaZ) {
+    double cx = Math.cos(thetaX);
+    double sx = Math.sin(thetaX);
+    double cy = Math.cos(thetaY);
+    double sy = Math.sin(thetaY);
+    double cz = Math.cos(thetaZ);
+    double sz = Math.sin(thetaZ);
+
+    // rotation part is X rotation * Y rotation * Z rotation
+    double r00 = cy * cz;
+    double r01 = -cy * sz;
+    double r02 = sy;
+    double r10 = (sx * sy * cz) + (cx * sz);
+    double r11 = (cx * cz) - (sx * sy * sz);
+    double r12 = -sx * cy;
+    double r20 = (sx * sz) - (cx * sy * cz);
+    double r21 = (cx * sy * sz) + (sx * cz);
+    double r22 = cx * cy;
+
+    matrix[0] = r00;
+    matrix[1] = r01;
+    matrix[2] = r02;
+    matrix[3] = p.x - ((r00 * p.x) + (r01 * p.y) + (r02 * p.z));
+
+    matrix[4] = r10;
+    matrix[5] = r11;
+    matrix[6] = r12;
+    matrix[7] = p.y - ((r10 * p.x) + (r11 * p.y) + (r12 * p.z));
+
+    matrix[8] = r20;
+    matrix[9] = r21;
+    matrix[10] = r22;
+    matrix[11] = p.z - ((r20 * p.x) + (r21 * p.y) + (r22 * p.z));
+
+    matrix[12] = 0.0;
+    matrix[13] = 0.0;
+    matrix[14] = 0.0;
+    matrix[15] = 1.0;
+  }
+
   public void transformPolygon(Polygon poly) {
     for (int i = 0; i < poly.points.length; i++) {
       this.transformPoint(poly.points[i]);
@@ -245,35 +292,202 @@ public class Matrix3D {
 
   public void transformPolyhedron(Polyhedron poly) {
     // transform all the points of the polyhedron
-    for (int i = 0; i < poly.points.size(); i++) {
-      this.transformPoint((Point3D)poly.points.elementAt(i));
+    this.transformMesh(poly.mesh);
+    // updating the points makes the polyhedron recompute the normals of
+    // its faces
+    poly.updatePoints();
+  }
+
+  /**
+   * Transforms all the vertices of a mesh by this matrix.  The vertices
+   * are taken to have a homogeneous coordinate of 1.
+   * @param mesh the mesh to transform
+   */
+  public void transformMesh(Mesh mesh) {
+    transformCoordinates(mesh.x, mesh.y, mesh.z, mesh.vertexCount, mesh.x, mesh.y, mesh.z);
+  }
+
+  /**
+   * Transforms points given as parallel coordinate arrays by this matrix,
+   * putting the results in the output arrays.  The points are taken to
+   * have a homogeneous coordinate of 1.  If this matrix is not affine
+   * (its bottom row is not 0, 0, 0, 1) the results are divided by their
+   * homogeneous coordinate.  The output arrays may be the same as the
+   * input arrays.  Nothing is allocated, so this is safe to call every
+   * frame.
+   * @param x x coordinates of the points
+   * @param y y coordinates of the points
+   * @param z z coordinates of the points
+   * @param count how many points to transform
+   * @param outX where to put the transformed x coordinates
+   * @param outY where to put the transformed y coordinates
+   * @param outZ where to put the transformed z coordinates
+   */
+  public void transformCoordinates(double x[], double y[], double z[], int count,
+                                   double outX[], double outY[], double outZ[]) {
+    transformCoordinates(x, y, z, 0, count, outX, outY, outZ);
+  }
+
+  /**
+   * Transforms the points from index start up to, but not including, index
+   * end, the same way as transformCoordinates(x, y, z, count, outX, outY, outZ)
+   */
+  public void transformCoordinates(double x[], double y[], double z[], int start, int end,
+                                   double outX[], double outY[], double outZ[]) {
+    double m[] = matrix;
+    TransformKernel kernel = transformKernel;
+    if (kernel != null && isAffine()) {
+      kernel.transformAffine(m, x, y, z, start, end, outX, outY, outZ);
+      return;
     }
-    // recompute the normals of all the faces in the polyhedron
-    for (int i = 0; i < poly.faces.size(); i++) {
-      ((Polygon)poly.faces.elementAt(i)).computeNormal();
+
+    double m00 = m[0], m01 = m[1], m02 = m[2], m03 = m[3];
+    double m10 = m[4], m11 = m[5], m12 = m[6], m13 = m[7];
+    double m20 = m[8], m21 = m[9], m22 = m[10], m23 = m[11];
+    double m30 = m[12], m31 = m[13], m32 = m[14], m33 = m[15];
+
+    if (isAffine()) {
+      for (int i = start; i < end; i++) {
+        double px = x[i];
+        double py = y[i];
+        double pz = z[i];
+        outX[i] = (m00 * px) + (m01 * py) + (m02 * pz) + m03;
+        outY[i] = (m10 * px) + (m11 * py) + (m12 * pz) + m13;
+        outZ[i] = (m20 * px) + (m21 * py) + (m22 * pz) + m23;
+      }
+    }
+    else {
+      for (int i = start; i < end; i++) {
+        double px = x[i];
+        double py = y[i];
+        double pz = z[i];
+        double w = (m30 * px) + (m31 * py) + (m32 * pz) + m33;
+        outX[i] = ((m00 * px) + (m01 * py) + (m02 * pz) + m03) / w;
+        outY[i] = ((m10 * px) + (m11 * py) + (m12 * pz) + m13) / w;
+        outZ[i] = ((m20 * px) + (m21 * py) + (m22 * pz) + m23) / w;
+      }
     }
   }
 
   /**
-   * Transforms a point by this matrix
-   * @param point the point to transform
+   * Turns a direction back the opposite way to the way this matrix turns
+   * things, so that a light shining in the given direction after this
+   * matrix can be dotted straight against normals from before it.
+   * Translation is left out and uniform scaling is divided back out, so
+   * unit vectors stay unit vectors.  Only right for matrices made of
+   * rotations, translations and uniform scalings, such as view matrices.
    */
-  public void transformPoint(Point3D point) {
-    double oldPoint[] = {point.x, point.y, point.z, point.a};
-    double newPoint[] = new double[4];
-    for (int i = 0; i < 4; i++) {
-      newPoint[i] = 0.0;
+  public void inverseTransformNormal(Point3D v) {
+    double m[] = matrix;
+    double scale = Math.sqrt((m[0] * m[0]) + (m[4] * m[4]) + (m[8] * m[8]));
+    if (scale == 0.0) {
+      scale = 1.0;
     }
+    double x = v.x;
+    double y = v.y;
+    double z = v.z;
+
+    // the inverse of a rotation is its transpose
+    v.x = ((m[0] * x) + (m[4] * y) + (m[8] * z)) / scale;
+    v.y = ((m[1] * x) + (m[5] * y) + (m[9] * z)) / scale;
+    v.z = ((m[2] * x) + (m[6] * y) + (m[10] * z)) / scale;
+  }
 
-    for (int i = 0; i < 4; i++) {
-      for (int j = 0; j < 4; j++) {
-        newPoint[i] += this.matrix[i][j] * oldPoint[j];
-      }
+  /**
+   * @return the loop transformCoordinates() uses for affine matrices, null
+   * if it uses its own
+   */
+  public static TransformKernel getTransformKernel() {
+    return transformKernel;
+  }
+
+  /**
+   * Changes the loop transformCoordinates() uses for affine matrices
+   * @param kernel the new loop, or null to use the one here
+   */
+  public static void setTransformKernel(TransformKernel kernel) {
+    transformKernel = kernel;
+  }
+
+  /**
+   * Loads VectorTransformKernel if it and the jdk.incubator.vector module
+   * it needs are both there
+   * @return the kernel, or null if it can't be loaded
+   */
+  private static TransformKernel loadTransformKernel() {
+    try {
+      Class kernelClass = Class.forName("com.dunncom.graphics.VectorTransformKernel");
+      return (TransformKernel) kernelClass.newInstance();
+    }
+    catch (Throwable t) {
+      // not there, or this VM can't run it
+      return null;
+    }
+  }
+
+  /**
+   * @return true if the bottom row of this matrix is 0, 0, 0, 1, so it
+   * never changes the homogeneous coordinate of a point
+   */
+  public boolean isAffine() {
+    return matrix[12] == 0.0 && matrix[13] == 0.0 && matrix[14] == 0.0 && matrix[15] == 1.0;
+  }
+
+  /**
+   * Straightens out the rotation part (upper left 3x3) of this matrix so
+   * its rows are unit length and at right angles to each other again.  A
+   * rotation that is built up by multiplying in many small rotations
+   * slowly picks up rounding error, which would otherwise show up as the
+   * object shearing and changing size.
+   */
+  public void orthonormalize() {
+    double m[] = matrix;
+
+    // first row just gets normalized
+    double length = Math.sqrt((m[0] * m[0]) + (m[1] * m[1]) + (m[2] * m[2]));
+    m[0] /= length;
+    m[1] /= length;
+    m[2] /= length;
+
+    // second row loses the part that points along the first
+    double dot = (m[4] * m[0]) + (m[5] * m[1]) + (m[6] * m[2]);
+    m[4] -= dot * m[0];
+    m[5] -= dot * m[1];
+    m[6] -= dot * m[2];
+    length = Math.sqrt((m[4] * m[4]) + (m[5] * m[5]) + (m[6] * m[6]));
+    m[4] /= length;
+    m[5] /= length;
+    m[6] /= length;
+
+    // third row is at right angles to both, keeping its handedness
+    double x = (m[1] * m[6]) - (m[2] * m[5]);
+    double y = (m[2] * m[4]) - (m[0] * m[6]);
+    double z = (m[0] * m[5]) - (m[1] * m[4]);
+    if ((x * m[8]) + (y * m[9]) + (z * m[10]) < 0) {
+      x = -x;
+      y = -y;
+      z = -z;
     }
-    point.x = newPoint[0];
-    point.y = newPoint[1];
-    point.z = newPoint[2];
-    point.a = newPoint[3];
+    m[8] = x;
+    m[9] = y;
+    m[10] = z;
+  }
+
+  /**
+   * Transforms a point by this matrix
+   * @param point the point to transform
+   */
+  public void transformPoint(Point3D point) {
+    double m[] = matrix;
+    double x = point.x;
+    double y = point.y;
+    double z = point.z;
+    double a = point.a;
+
+    point.x = (m[0] * x) + (m[1] * y) + (m[2] * z) + (m[3] * a);
+    point.y = (m[4] * x) + (m[5] * y) + (m[6] * z) + (m[7] * a);
+    point.z = (m[8] * x) + (m[9] * y) + (m[10] * z) + (m[11] * a);
+    point.a = (m[12] * x) + (m[13] * y) + (m[14] * z) + (m[15] * a);
   }
 
   /**
@@ -283,14 +497,39 @@ public class Matrix3D {
    * @return the new composite matrix
    */
   public static Matrix3D mult(Matrix3D m1, Matrix3D m2) {
-    Matrix3D m3 = new Matrix3D();
+    return mult(m1, m2, new Matrix3D());
+  }
 
-    for (int i = 0; i <  4; i++) {
-      for (int j = 0; j <  4; j++) {
-        for (int k = 0; k <  4; k++) {
-          m3.matrix[j][i] += m1.matrix[j][k] * m2.matrix[k][i];
-        }
-      }
+  /**
+   * Multiplies the two matrices, putting the result in a third matrix
+   * rather than a new one.  The result matrix may be either of the other
+   * two, so mult(rotation, orientation, orientation) turns orientation
+   * by rotation in place.
+   * @param m1 the first matrix
+   * @param m2 the second matrix
+   * @param m3 where to put the composite matrix
+   * @return m3
+   */
+  public static Matrix3D mult(Matrix3D m1, Matrix3D m2, Matrix3D m3) {
+    double a[] = m1.matrix;
+    double b[] = m2.matrix;
+    double c[] = m3.matrix;
+    double a00 = a[0], a01 = a[1], a02 = a[2], a03 = a[3];
+    double a10 = a[4], a11 = a[5], a12 = a[6], a13 = a[7];
+    double a20 = a[8], a21 = a[9], a22 = a[10], a23 = a[11];
+    double a30 = a[12], a31 = a[13], a32 = a[14], a33 = a[15];
+
+    // a is in locals, and each column of b is read before that column of
+    // the result is written, so c can be the same array as a or b
+    for (int j = 0; j < 4; j++) {
+      double b0 = b[j];
+      double b1 = b[4 + j];
+      double b2 = b[8 + j];
+      double b3 = b[12 + j];
+      c[j] = (a00 * b0) + (a01 * b1) + (a02 * b2) + (a03 * b3);
+      c[4 + j] = (a10 * b0) + (a11 * b1) + (a12 * b2) + (a13 * b3);
+      c[8 + j] = (a20 * b0) + (a21 * b1) + (a22 * b2) + (a23 * b3);
+      c[12 + j] = (a30 * b0) + (a31 * b1) + (a32 * b2) + (a33 * b3);
     }
 
     return m3;
@@ -308,7 +547,7 @@ public class Matrix3D {
   public String toString() {
     String string = "";
     for (int i = 0; i < 4; i++) {
-      string += "[" + matrix[i][0] + ", " + matrix[i][1] + ", " + matrix[i][2] + ", " + matrix[i][3] + "]\n";
+      string += "[" + matrix[4 * i] + ", " + matrix[(4 * i) + 1] + ", " + matrix[(4 * i) + 2] + ", " + matrix[(4 * i) + 3] + "]\n";
     }
     return string;
   }
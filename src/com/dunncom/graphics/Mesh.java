@@ -0,0 +1,388 @@
+package com.dunncom.graphics;
+
+import java.util.Arrays;
+
+/**
+ * Flat, array based storage for the vertices and faces of a polyhedron.
+ * The x, y, and z coordinates of the vertices are kept in three parallel
+ * arrays of doubles, and the faces are kept as runs of vertex indices one
+ * after another in a single int array.  Loops over all the vertices of a
+ * large model can then walk the arrays directly, without going through a
+ * Vector of Point3D objects.
+ *
+ * @author Thomas Dunn
+ */
+
+public class Mesh {
+
+  /**
+   * x coordinates of the vertices
+   */
+  public double x[];
+
+  /**
+   * y coordinates of the vertices
+   */
+  public double y[];
+
+  /**
+   * z coordinates of the vertices
+   */
+  public double z[];
+
+  /**
+   * Number of vertices in use.  The coordinate arrays may be longer.
+   */
+  public int vertexCount;
+
+  /**
+   * Vertex indices of all the faces, the vertices of face 0 first, then
+   * the vertices of face 1, and so on
+   */
+  public int faceVertices[];
+
+  /**
+   * Where each face starts in faceVertices.  Face f uses the entries from
+   * faceStart[f] up to, but not including, faceStart[f + 1].
+   */
+  public int faceStart[];
+
+  /**
+   * Number of faces in use.
+   */
+  public int faceCount;
+
+  /**
+   * x components of the unit normals of the faces, filled in by
+   * computeFaceNormals().  The normals are only used for culling and
+   * shading, so floats are plenty, and take half the room.
+   */
+  public float normalX[];
+
+  /**
+   * y components of the unit normals of the faces
+   */
+  public float normalY[];
+
+  /**
+   * z components of the unit normals of the faces
+   */
+  public float normalZ[];
+
+  /**
+   * First vertex of each edge, filled in by computeEdges().  Edges shared
+   * by more than one face are only listed once.
+   */
+  public int edgeFrom[];
+
+  /**
+   * Second vertex of each edge
+   */
+  public int edgeTo[];
+
+  /**
+   * Number of edges in edgeFrom and edgeTo
+   */
+  public int edgeCount;
+
+  public Mesh() {
+    this(16, 16);
+  }
+
+  /**
+   * Create an empty mesh with room for the given number of vertices and
+   * faces.  The arrays grow as needed, so the sizes are only a hint.
+   */
+  public Mesh(int vertexCapacity, int faceCapacity) {
+    x = new double[Math.max(vertexCapacity, 1)];
+    y = new double[x.length];
+    z = new double[x.length];
+    faceStart = new int[Math.max(faceCapacity, 1) + 1];
+    faceVertices = new int[faceStart.length * 4];
+  }
+
+  /**
+   * Adds a vertex to the end of the mesh
+   * @return the index of the new vertex
+   */
+  public int addVertex(double x, double y, double z) {
+    if (vertexCount == this.x.length) {
+      this.x = grow(this.x);
+      this.y = grow(this.y);
+      this.z = grow(this.z);
+    }
+    this.x[vertexCount] = x;
+    this.y[vertexCount] = y;
+    this.z[vertexCount] = z;
+    return vertexCount++;
+  }
+
+  /**
+   * Adds a face to the end of the mesh
+   * @param indices the indices of the vertices of the face, in order
+   * @return the index of the new face
+   */
+  public int addFace(int indices[]) {
+    return addFace(indices, indices.length);
+  }
+
+  /**
+   * Adds a face to the end of the mesh
+   * @param indices the indices of the vertices of the face, in order
+   * @param count the number of vertices in the face, the rest of indices
+   * being ignored
+   * @return the index of the new face
+   */
+  public int addFace(int indices[], int count) {
+    if (faceCount + 1 == faceStart.length) {
+      int newStart[] = new int[faceStart.length * 2];
+      System.arraycopy(faceStart, 0, newStart, 0, faceStart.length);
+      faceStart = newStart;
+    }
+    int start = faceStart[faceCount];
+    while (start + count > faceVertices.length) {
+      int newVertices[] = new int[faceVertices.length * 2];
+      System.arraycopy(faceVertices, 0, newVertices, 0, faceVertices.length);
+      faceVertices = newVertices;
+    }
+    System.arraycopy(indices, 0, faceVertices, start, count);
+    faceStart[faceCount + 1] = start + count;
+    return faceCount++;
+  }
+
+  /**
+   * @return a new mesh with the same vertices and faces, in arrays just
+   * big enough for them.  The face normals and edges aren't copied.
+   */
+  public Mesh copy() {
+    Mesh copy = new Mesh(vertexCount, faceCount);
+    System.arraycopy(x, 0, copy.x, 0, vertexCount);
+    System.arraycopy(y, 0, copy.y, 0, vertexCount);
+    System.arraycopy(z, 0, copy.z, 0, vertexCount);
+    System.arraycopy(faceStart, 0, copy.faceStart, 0, faceCount + 1);
+    copy.faceVertices = new int[Math.max(faceStart[faceCount], 1)];
+    System.arraycopy(faceVertices, 0, copy.faceVertices, 0, faceStart[faceCount]);
+    copy.vertexCount = vertexCount;
+    copy.faceCount = faceCount;
+    return copy;
+  }
+
+  /**
+   * Shrinks the vertex and face arrays to just hold the vertices and faces
+   * there are, like Vector.trimToSize(), once no more are to be added.
+   * Adding more afterwards still works, it just grows them again.
+   */
+  public void trimToSize() {
+    if (x.length > vertexCount) {
+      x = trim(x, vertexCount);
+      y = trim(y, vertexCount);
+      z = trim(z, vertexCount);
+    }
+    if (faceStart.length > faceCount + 1) {
+      int newStart[] = new int[faceCount + 1];
+      System.arraycopy(faceStart, 0, newStart, 0, newStart.length);
+      faceStart = newStart;
+    }
+    int indexCount = faceStart[faceCount];
+    if (faceVertices.length > indexCount) {
+      int newVertices[] = new int[Math.max(indexCount, 1)];
+      System.arraycopy(faceVertices, 0, newVertices, 0, indexCount);
+      faceVertices = newVertices;
+    }
+  }
+
+  /**
+   * Computes the unit normal of every face from its first three vertices,
+   * the same way Polygon.computeNormal() does, into normalX, normalY and
+   * normalZ.  A face whose first three vertices are in a line gets a zero
+   * normal.  Call again after changing the coordinates or adding faces.
+   */
+  public void computeFaceNormals() {
+    if (normalX == null || normalX.length < faceCount) {
+      normalX = new float[faceCount];
+      normalY = new float[faceCount];
+      normalZ = new float[faceCount];
+    }
+
+    for (int f = 0; f < faceCount; f++) {
+      int start = faceStart[f];
+      int i0 = faceVertices[start];
+      int i1 = faceVertices[start + 1];
+      int i2 = faceVertices[start + 2];
+      double x0 = x[i0], y0 = y[i0], z0 = z[i0];
+      double x1 = x[i1], y1 = y[i1], z1 = z[i1];
+      double x2 = x[i2], y2 = y[i2], z2 = z[i2];
+
+      double a = (y0 * (z1 - z2)) + (y1 * (z2 - z0)) + (y2 * (z0 - z1));
+      double b = (z0 * (x1 - x2)) + (z1 * (x2 - x0)) + (z2 * (x0 - x1));
+      double c = (x0 * (y1 - y2)) + (x1 * (y2 - y0)) + (x2 * (y0 - y1));
+
+      double length = Math.sqrt((a * a) + (b * b) + (c * c));
+      if (length > 0.0) {
+        a /= length;
+        b /= length;
+        c /= length;
+      }
+      normalX[f] = (float) a;
+      normalY[f] = (float) b;
+      normalZ[f] = (float) c;
+    }
+  }
+
+  /**
+   * Lists every edge of every face once, into edgeFrom and edgeTo, no
+   * matter how many faces share it.  Call again after adding faces.
+   */
+  public void computeEdges() {
+    // each edge as one long, smaller vertex index in the high half, so
+    // the same edge from two faces gives the same key
+    long keys[] = new long[faceStart[faceCount]];
+    int keyCount = 0;
+    for (int f = 0; f < faceCount; f++) {
+      int start = faceStart[f];
+      int end = faceStart[f + 1];
+      int last = faceVertices[end - 1];
+      for (int i = start; i < end; i++) {
+        int next = faceVertices[i];
+        if (last < next) {
+          keys[keyCount++] = ((long) last << 32) | next;
+        }
+        else if (next < last) {
+          keys[keyCount++] = ((long) next << 32) | last;
+        }
+        last = next;
+      }
+    }
+
+    // sorting puts the copies of an edge next to each other
+    Arrays.sort(keys, 0, keyCount);
+    int unique = 0;
+    for (int i = 0; i < keyCount; i++) {
+      if (i == 0 || keys[i] != keys[i - 1]) {
+        keys[unique++] = keys[i];
+      }
+    }
+
+    edgeFrom = new int[unique];
+    edgeTo = new int[unique];
+    for (int i = 0; i < unique; i++) {
+      edgeFrom[i] = (int) (keys[i] >>> 32);
+      edgeTo[i] = (int) keys[i];
+    }
+    edgeCount = unique;
+  }
+
+  /**
+   * @return the number of vertices in the given face
+   */
+  public int faceSize(int face) {
+    return faceStart[face + 1] - faceStart[face];
+  }
+
+  /**
+   * Yields the average point, or average x, y, and z values for all the
+   * vertices in this mesh
+   */
+  public Point3D averagePoint() {
+    double totalX = 0.0;
+    double totalY = 0.0;
+    double totalZ = 0.0;
+
+    for (int i = 0; i < vertexCount; i++) {
+      totalX += x[i];
+      totalY += y[i];
+      totalZ += z[i];
+    }
+
+    return new Point3D(totalX / vertexCount, totalY / vertexCount, totalZ / vertexCount);
+  }
+
+  /**
+   * yields the maximum x, y, and z values of all vertices in this mesh,
+   * encoded in a Point3D object
+   */
+  public Point3D maximums() {
+    double maxX = x[0];
+    double maxY = y[0];
+    double maxZ = z[0];
+
+    for (int i = 1; i < vertexCount; i++) {
+      if (x[i] > maxX) {
+        maxX = x[i];
+      }
+      if (y[i] > maxY) {
+        maxY = y[i];
+      }
+      if (z[i] > maxZ) {
+        maxZ = z[i];
+      }
+    }
+
+    return new Point3D(maxX, maxY, maxZ);
+  }
+
+  /**
+   * yields the minimum x, y, and z values of all vertices in this mesh,
+   * encoded in a Point3D object
+   */
+  public Point3D minimums() {
+    double minX = x[0];
+    double minY = y[0];
+    double minZ = z[0];
+
+    for (int i = 1; i < vertexCount; i++) {
+      if (x[i] < minX) {
+        minX = x[i];
+      }
+      if (y[i] < minY) {
+        minY = y[i];
+      }
+      if (z[i] < minZ) {
+        minZ = z[i];
+      }
+    }
+
+    return new Point3D(minX, minY, minZ);
+  }
+
+  /**
+   * @return roughly how many bytes of heap the arrays of this mesh take,
+   * with the face normals and edges counted whether or not they have been
+   * worked out yet
+   */
+  public long estimateBytes() {
+    long bytes = 8L * (x.length + y.length + z.length) +
+                 4L * (faceVertices.length + faceStart.length);
+    bytes += 4L * 3 * (normalX != null ? normalX.length : faceCount);
+    bytes += 4L * 2 * estimateEdgeCount();
+    return bytes;
+  }
+
+  /**
+   * @return the number of edges computeEdges() found, or if it hasn't
+   * been called, about how many it will find, taking each edge to be
+   * shared by two faces
+   */
+  public int estimateEdgeCount() {
+    if (edgeFrom != null) {
+      return edgeCount;
+    }
+    return faceStart[faceCount] / 2;
+  }
+
+  private static double[] trim(double array[], int count) {
+    double newArray[] = new double[Math.max(count, 1)];
+    System.arraycopy(array, 0, newArray, 0, count);
+    return newArray;
+  }
+
+  private static double[] grow(double array[]) {
+    double newArray[] = new double[array.length * 2];
+    System.arraycopy(array, 0, newArray, 0, array.length);
+    return newArray;
+  }
+
+  public String toString() {
+    return "Mesh: " + vertexCount + " vertices, " + faceCount + " faces";
+  }
+}
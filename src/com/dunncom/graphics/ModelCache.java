@@ -0,0 +1,229 @@
+package com.dunncom.graphics;
+
+import java.lang.ref.SoftReference;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * Keeps models that have already been loaded, by filename, so going back
+ * to one doesn't mean downloading and parsing it again.
+ * <P>
+ * The models kept are limited by a budget of bytes, as estimated by
+ * Polyhedron.estimateBytes() when a model is put in.  That counts what
+ * the model will keep for drawing once it has been drawn, since a model
+ * is usually put in before it is first drawn.  When a new model doesn't
+ * fit, the least recently used ones are dropped until it does, and a
+ * model bigger than the whole budget isn't kept at all.  Models are only held through
+ * SoftReferences, so if the heap runs low the garbage collector can take
+ * them back before the budget is reached; they are then noticed and
+ * dropped from the cache the next time it is used.
+ * <P>
+ * A model in the cache is the same Polyhedron object each time, so it
+ * must not be changed by whoever gets it beyond projecting and drawing
+ * it.
+ *
+ * @author Thomas Dunn
+ */
+
+public class ModelCache {
+
+  /**
+   * A model in the cache
+   */
+  static class Entry {
+    String filename;
+    SoftReference polyhedron;
+    long bytes;
+
+    Entry(String filename, Polyhedron polyhedron, long bytes) {
+      this.filename = filename;
+      this.polyhedron = new SoftReference(polyhedron);
+      this.bytes = bytes;
+    }
+  }
+
+  /**
+   * Most bytes of models to keep
+   */
+  private long byteBudget;
+
+  /**
+   * Estimated bytes of the models kept
+   */
+  private long bytes;
+
+  /**
+   * Entry of each model kept, by filename
+   */
+  private Hashtable entries = new Hashtable();
+
+  /**
+   * The entries, least recently used first
+   */
+  private Vector order = new Vector();
+
+  private int hits;
+  private int misses;
+  private int evictions;
+  private int releases;
+
+  /**
+   * @param byteBudget most bytes of models to keep
+   */
+  public ModelCache(long byteBudget) {
+    this.byteBudget = byteBudget;
+  }
+
+  /**
+   * @return the model loaded from a file, or null if it isn't kept
+   */
+  public synchronized Polyhedron get(String filename) {
+    Entry entry = (Entry) entries.get(filename);
+    Polyhedron polyhedron = null;
+    if (entry != null) {
+      polyhedron = (Polyhedron) entry.polyhedron.get();
+      if (polyhedron == null) {
+        releases++;
+        remove(entry);
+      }
+    }
+    removeReleased();
+
+    if (polyhedron == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+
+    // it is now the most recently used
+    order.removeElement(entry);
+    order.addElement(entry);
+    return polyhedron;
+  }
+
+  /**
+   * @return whether the model loaded from a file is kept, without
+   * counting as a hit or miss or as using it
+   */
+  public synchronized boolean contains(String filename) {
+    Entry entry = (Entry) entries.get(filename);
+    return entry != null && entry.polyhedron.get() != null;
+  }
+
+  /**
+   * Keeps a model, dropping the least recently used ones if need be to
+   * stay within the budget
+   * @param filename the file it was loaded from
+   */
+  public synchronized void put(String filename, Polyhedron polyhedron) {
+    Entry old = (Entry) entries.get(filename);
+    if (old != null) {
+      remove(old);
+    }
+    removeReleased();
+
+    long newBytes = polyhedron.estimateBytes();
+    if (newBytes > byteBudget) {
+      return;
+    }
+    while (bytes + newBytes > byteBudget) {
+      evictions++;
+      remove((Entry) order.elementAt(0));
+    }
+
+    Entry entry = new Entry(filename, polyhedron, newBytes);
+    entries.put(filename, entry);
+    order.addElement(entry);
+    bytes += newBytes;
+  }
+
+  /**
+   * Drops all the models
+   */
+  public synchronized void clear() {
+    entries.clear();
+    order.removeAllElements();
+    bytes = 0;
+  }
+
+  private void remove(Entry entry) {
+    entries.remove(entry.filename);
+    order.removeElement(entry);
+    bytes -= entry.bytes;
+  }
+
+  /**
+   * Drops the entries whose models the garbage collector has taken
+   */
+  private void removeReleased() {
+    for (int i = order.size() - 1; i >= 0; i--) {
+      Entry entry = (Entry) order.elementAt(i);
+      if (entry.polyhedron.get() == null) {
+        releases++;
+        remove(entry);
+      }
+    }
+  }
+
+  /**
+   * @return number of models kept
+   */
+  public synchronized int size() {
+    return order.size();
+  }
+
+  /**
+   * @return estimated bytes of the models kept
+   */
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  public synchronized long getByteBudget() {
+    return byteBudget;
+  }
+
+  /**
+   * @return how many times get() found the model
+   */
+  public synchronized int getHits() {
+    return hits;
+  }
+
+  /**
+   * @return how many times get() didn't find the model
+   */
+  public synchronized int getMisses() {
+    return misses;
+  }
+
+  /**
+   * @return how many models were dropped to make room for others
+   */
+  public synchronized int getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * @return how many models were dropped because the garbage collector
+   * took them back
+   */
+  public synchronized int getReleases() {
+    return releases;
+  }
+
+  /**
+   * returns string to look like:
+   * <pre>
+   * 3 models, 1450 of 16384 KB, 10 hits, 4 misses, 1 evicted, 0 released
+   * </pre>
+   */
+  public synchronized String toString() {
+    return order.size() + " models, " +
+           (bytes / 1024) + " of " + (byteBudget / 1024) + " KB, " +
+           hits + " hits, " +
+           misses + " misses, " +
+           evictions + " evicted, " +
+           releases + " released";
+  }
+}
@@ -0,0 +1,539 @@
+package com.dunncom.graphics;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Loads models on a thread of its own, so the user interface keeps
+ * running, and the current model keeps being drawn, while a new one is
+ * downloaded and parsed.
+ * <P>
+ * Only the latest model asked for matters.  Asking for another model
+ * cancels the one being loaded, which stops at the next line it reads,
+ * and its Polyhedron is thrown away.  While a model loads, the listener is
+ * told every so often how many bytes, vertices and faces have been read,
+ * and given the faces read so far to show while the rest load.  The
+ * listener is called on the loading thread.
+ * <P>
+ * The thread is only started when there is something to load, and ends
+ * when there is nothing left to load.
+ * <P>
+ * If given a ModelCache, models found in it are handed over straight
+ * away, and models read are put in it.  If a model has a binary mesh
+ * file made by BinaryMeshFile next to it, that is read instead of the
+ * model file itself.
+ * <P>
+ * Model files can be compressed, either as files named with GZIP_SUFFIX
+ * or DEFLATE_SUFFIX on the end, such as x_wing.obj.gz, or by the server
+ * with a Content-Encoding of gzip or deflate.  They are decompressed as
+ * they are parsed, so parsing goes on while the rest of the file is still
+ * arriving, and the bytes the listener is told about are the compressed
+ * bytes read.
+ * <P>
+ * Model files of at least PARALLEL_PARSE_BYTES are read whole and then
+ * parsed with ThreeDimensionalObjectFileReader.parseParallel(), so the
+ * listener only hears how they are going once they have been read.
+ *
+ * @author Thomas Dunn
+ */
+
+public class ModelLoader implements Runnable {
+
+  /**
+   * Smallest model file parsed on more than one thread
+   */
+  public static final int PARALLEL_PARSE_BYTES = 4 * 1024 * 1024;
+
+  /**
+   * Least time between handing the listener the faces read so far.  Each
+   * time also waits for the faces to have grown by half, so copying them
+   * takes no more than a few times as long as copying the whole model
+   * once.
+   */
+  public static final long PARTIAL_MODEL_MILLIS = 250;
+
+  /**
+   * On the end of a model file compressed with gzip
+   */
+  public static final String GZIP_SUFFIX = ".gz";
+
+  /**
+   * On the end of a model file compressed with deflate, with or without
+   * the zlib header and checksum
+   */
+  public static final String DEFLATE_SUFFIX = ".deflate";
+
+  /**
+   * Size of the buffer decompressed model files are read through
+   */
+  static final int DECOMPRESS_BUFFER_SIZE = 8192;
+
+  /**
+   * Told how a model load is going
+   */
+  public interface Listener {
+    /**
+     * Called every so often while a model is read
+     * @param bytesRead number of bytes of the file read so far
+     */
+    void loadProgress(String modelFilename, long bytesRead, int vertices, int faces);
+
+    /**
+     * Called every so often while a model file is read, with a copy of
+     * the faces read so far.  Not called for models read whole, such as
+     * those in the cache.
+     * @param range the range for x, y, and z values of all the vertices
+     * read so far, to size the model by until it is all read
+     * @param center the average point of all the vertices read so far
+     */
+    void modelPartlyLoaded(String modelFilename, Polyhedron polyhedron,
+                           Point3D range, Point3D center);
+
+    /**
+     * Called with the model once it has all been read, unless it has been
+     * cancelled
+     * @param modelFilename the model file, or null for the built in pyramid
+     */
+    void modelLoaded(String modelFilename, Polyhedron polyhedron);
+
+    /**
+     * Called if the model can't be read
+     * @param reason a message saying why, for the status bar
+     */
+    void loadFailed(String modelFilename, String reason);
+  }
+
+  /**
+   * Counts the bytes read through it
+   */
+  static class CountingInputStream extends FilterInputStream {
+    private long count;
+
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        count++;
+      }
+      return b;
+    }
+
+    public int read(byte b[], int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) {
+        count += n;
+      }
+      return n;
+    }
+
+    long getCount() {
+      return count;
+    }
+  }
+
+  /**
+   * Where the model files are
+   */
+  private URL modelsURL;
+
+  private Listener listener;
+
+  /**
+   * Models already loaded, or null
+   */
+  private ModelCache cache;
+
+  /**
+   * The thread loading models, null when there is nothing to load
+   */
+  private Thread thread;
+
+  /**
+   * Whether there is a model waiting to be loaded
+   */
+  private boolean waiting;
+
+  /**
+   * The model waiting to be loaded, null for the pyramid
+   */
+  private String waitingFilename;
+
+  /**
+   * Goes up each time a model is asked for or loading is cancelled, so a
+   * load can tell it has been replaced
+   */
+  private int generation;
+
+  /**
+   * Reader of the model being loaded, or null
+   */
+  private ThreeDimensionalObjectFileReader currentReader;
+
+  /**
+   * @param modelsURL the directory the model files are in, ending in '/'
+   */
+  public ModelLoader(URL modelsURL, Listener listener) {
+    this.modelsURL = modelsURL;
+    this.listener = listener;
+  }
+
+  /**
+   * @param cache models already loaded, or null to always read them
+   */
+  public synchronized void setCache(ModelCache cache) {
+    this.cache = cache;
+  }
+
+  public synchronized ModelCache getCache() {
+    return cache;
+  }
+
+  /**
+   * Starts loading a model, cancelling any model being loaded or waiting
+   * to be loaded
+   * @param modelFilename the model file, or null for the built in pyramid
+   */
+  public synchronized void load(String modelFilename) {
+    waiting = true;
+    waitingFilename = modelFilename;
+    generation++;
+    if (currentReader != null) {
+      currentReader.cancel();
+    }
+    if (thread == null) {
+      thread = new Thread(this, "ModelLoader");
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  /**
+   * Cancels any model being loaded or waiting to be loaded
+   */
+  public synchronized void cancel() {
+    waiting = false;
+    waitingFilename = null;
+    generation++;
+    if (currentReader != null) {
+      currentReader.cancel();
+    }
+  }
+
+  /**
+   * Reads a model on the calling thread, the same way load() does on its
+   * own thread, telling the listener how it goes.  cancel() stops it as
+   * it would a model being loaded by load().
+   * @param modelFilename the model file, or null for the built in pyramid
+   * @return the model, or null if it couldn't be read or was cancelled
+   */
+  public Polyhedron loadNow(String modelFilename) {
+    int loadGeneration;
+    synchronized (this) {
+      loadGeneration = ++generation;
+    }
+    return loadModel(modelFilename, loadGeneration);
+  }
+
+  /**
+   * @return whether a model is being loaded or waiting to be loaded
+   */
+  public synchronized boolean isLoading() {
+    return thread != null;
+  }
+
+  /**
+   * Loads models until there are none waiting
+   */
+  public void run() {
+    while (true) {
+      String modelFilename;
+      int loadGeneration;
+      synchronized (this) {
+        if (! waiting) {
+          thread = null;
+          return;
+        }
+        modelFilename = waitingFilename;
+        loadGeneration = generation;
+        waiting = false;
+        waitingFilename = null;
+      }
+
+      try {
+        loadModel(modelFilename, loadGeneration);
+      }
+      catch (RuntimeException re) {
+        System.out.println("Caught RuntimeException in ModelLoader in run()");
+        System.out.println(re);
+        re.printStackTrace();
+        listener.loadFailed(modelFilename, "Couldn't read " + modelFilename + ": " + re);
+      }
+    }
+  }
+
+  /**
+   * Reads a model and hands it to the listener, unless it is cancelled
+   * @param loadGeneration the generation when the model was asked for
+   * @return the model, or null if it couldn't be read or was cancelled
+   */
+  Polyhedron loadModel(final String modelFilename, int loadGeneration) {
+    ModelCache modelCache = getCache();
+    Polyhedron polyhedron;
+    if (modelFilename == null) {
+      polyhedron = Polyhedron.createPyramid5Polyhedron();
+    }
+    else if (modelCache != null &&
+             (polyhedron = modelCache.get(modelFilename)) != null) {
+      // cancelled or replaced by a newer load, even though it was quick
+      if (! isCurrent(loadGeneration)) {
+        return null;
+      }
+      listener.modelLoaded(modelFilename, polyhedron);
+      return polyhedron;
+    }
+    else {
+      polyhedron = readBinary(modelFilename);
+      if (polyhedron == null) {
+        polyhedron = readText(modelFilename, loadGeneration);
+        if (polyhedron == null) {
+          return null;
+        }
+      }
+    }
+
+    // work out the face normals here rather than in the first frame
+    // drawn, without projecting, which would hold up the frames being
+    // drawn meanwhile on the drawing workers
+    polyhedron.computeNormals();
+    if (modelFilename != null && modelCache != null) {
+      modelCache.put(modelFilename, polyhedron);
+    }
+
+    if (! isCurrent(loadGeneration)) {
+      return null;
+    }
+    listener.modelLoaded(modelFilename, polyhedron);
+    return polyhedron;
+  }
+
+  /**
+   * @return whether a load is still the latest one asked for
+   */
+  private synchronized boolean isCurrent(int loadGeneration) {
+    return generation == loadGeneration;
+  }
+
+  /**
+   * Reads the binary mesh file made from a model by BinaryMeshFile, if
+   * there is one
+   * @return the model, or null if there is no binary mesh file or it
+   * can't be read
+   */
+  Polyhedron readBinary(String modelFilename) {
+    CountingInputStream in;
+    try {
+      URL binaryURL = new URL(modelsURL, uncompressedName(modelFilename) + BinaryMeshFile.BINARY_SUFFIX);
+      in = new CountingInputStream(binaryURL.openConnection().getInputStream());
+    }
+    catch (IOException ioe) {
+      // no binary mesh file, so read the text one
+      return null;
+    }
+
+    try {
+      Polyhedron polyhedron = BinaryMeshFile.read(new BufferedInputStream(in));
+      listener.loadProgress(modelFilename, in.getCount(),
+                            polyhedron.mesh.vertexCount, polyhedron.mesh.faceCount);
+      return polyhedron;
+    }
+    catch (IOException ioe) {
+      System.out.println("Caught IOException in ModelLoader in readBinary()");
+      System.out.println(ioe);
+      ioe.printStackTrace();
+      return null;
+    }
+    finally {
+      close(in);
+    }
+  }
+
+  /**
+   * Reads a model file with the reader for its format
+   * @return the model, or null if it couldn't be read or was cancelled
+   */
+  Polyhedron readText(final String modelFilename, final int loadGeneration) {
+    Polyhedron polyhedron;
+    final CountingInputStream in;
+    InputStream modelIn;
+    int length;
+    String contentEncoding;
+    try {
+      URL objectURL = new URL(modelsURL, modelFilename);
+      URLConnection connection = objectURL.openConnection();
+      connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+      in = new CountingInputStream(connection.getInputStream());
+      length = connection.getContentLength();
+      contentEncoding = connection.getContentEncoding();
+    }
+    catch (IOException ioe) {
+      System.out.println("Caught IOException in ModelLoader in readText()");
+      System.out.println(ioe);
+      ioe.printStackTrace();
+      listener.loadFailed(modelFilename, "Couldn't read " + modelFilename + ": " + ioe);
+      return null;
+    }
+
+    try {
+      modelIn = decompress(in, modelFilename, contentEncoding);
+    }
+    catch (IOException ioe) {
+      System.out.println("Caught IOException in ModelLoader in readText()");
+      System.out.println(ioe);
+      ioe.printStackTrace();
+      close(in);
+      listener.loadFailed(modelFilename, "Couldn't decompress " + modelFilename + ": " + ioe);
+      return null;
+    }
+
+    // read the object file with the correct file format reader
+    String formatFilename = uncompressedName(modelFilename);
+    final ThreeDimensionalObjectFileReader objectReader =
+      ThreeDimensionalObjectFileReader.createReader(formatFilename, modelIn);
+    if (objectReader == null) {
+      close(modelIn);
+      String extension = formatFilename.substring(formatFilename.indexOf("."));
+      listener.loadFailed(modelFilename, "File format " + extension + " not recognized.");
+      return null;
+    }
+    objectReader.setProgressListener(new ThreeDimensionalObjectFileReader.ProgressListener() {
+      long partialTime;
+      int partialFaces;
+
+      public void parsed(int vertices, int faces) {
+        listener.loadProgress(modelFilename, in.getCount(), vertices, faces);
+
+        long now = System.currentTimeMillis();
+        if (faces > partialFaces + partialFaces / 2 &&
+            now - partialTime >= PARTIAL_MODEL_MILLIS) {
+          Polyhedron partial = objectReader.getPartialPolyhedron();
+          if (partial != null && isCurrent(loadGeneration)) {
+            listener.modelPartlyLoaded(modelFilename, partial,
+                                       objectReader.vertexRange(),
+                                       objectReader.vertexAveragePoint());
+          }
+          partialTime = now;
+          partialFaces = faces;
+        }
+      }
+    });
+
+    synchronized (this) {
+      if (generation != loadGeneration) {
+        // already replaced or cancelled
+        close(modelIn);
+        return null;
+      }
+      currentReader = objectReader;
+    }
+    try {
+      if (length >= PARALLEL_PARSE_BYTES) {
+        polyhedron = objectReader.parseParallel();
+      }
+      else {
+        polyhedron = objectReader.parse();
+      }
+    }
+    finally {
+      synchronized (this) {
+        currentReader = null;
+      }
+      close(modelIn);
+    }
+    if (objectReader.isCancelled()) {
+      return null;
+    }
+    // the arrays were grown by doubling as the file was read
+    polyhedron.trimToSize();
+    return polyhedron;
+  }
+
+  /**
+   * @return the name of a model file without GZIP_SUFFIX or
+   * DEFLATE_SUFFIX, which is the name the file format goes by
+   */
+  public static String uncompressedName(String modelFilename) {
+    if (modelFilename.endsWith(GZIP_SUFFIX)) {
+      return modelFilename.substring(0, modelFilename.length() - GZIP_SUFFIX.length());
+    }
+    if (modelFilename.endsWith(DEFLATE_SUFFIX)) {
+      return modelFilename.substring(0, modelFilename.length() - DEFLATE_SUFFIX.length());
+    }
+    return modelFilename;
+  }
+
+  /**
+   * Decompresses a model file as it is read, if the server says it is
+   * compressed or its name does
+   * @param contentEncoding the Content-Encoding the server gave, or null
+   * @return the stream of the model file itself
+   */
+  public static InputStream decompress(InputStream in, String modelFilename,
+                                       String contentEncoding) throws IOException {
+    if (contentEncoding != null) {
+      contentEncoding = contentEncoding.trim().toLowerCase();
+    }
+    if ("gzip".equals(contentEncoding) || "x-gzip".equals(contentEncoding) ||
+        modelFilename.endsWith(GZIP_SUFFIX)) {
+      return new GZIPInputStream(in, DECOMPRESS_BUFFER_SIZE);
+    }
+    if ("deflate".equals(contentEncoding) || modelFilename.endsWith(DEFLATE_SUFFIX)) {
+      return inflate(in);
+    }
+    return in;
+  }
+
+  /**
+   * Inflates deflate compressed data, which servers send both with and
+   * without the zlib header, so the first two bytes are looked at to tell
+   * which
+   */
+  static InputStream inflate(InputStream in) throws IOException {
+    PushbackInputStream pushback = new PushbackInputStream(in, 2);
+    int b0 = pushback.read();
+    int b1 = b0 < 0 ? -1 : pushback.read();
+    if (b1 >= 0) {
+      pushback.unread(b1);
+    }
+    if (b0 >= 0) {
+      pushback.unread(b0);
+    }
+
+    // a zlib header says deflate, and is a multiple of 31
+    boolean zlib = b1 >= 0 && (b0 & 0x0f) == 8 && ((b0 << 8) | b1) % 31 == 0;
+    return new InflaterInputStream(pushback, new Inflater(! zlib), DECOMPRESS_BUFFER_SIZE) {
+      public void close() throws IOException {
+        super.close();
+        // an Inflater passed in isn't ended by close()
+        inf.end();
+      }
+    };
+  }
+
+  private void close(InputStream in) {
+    try {
+      in.close();
+    }
+    catch (IOException ioe) {}
+  }
+}
@@ -0,0 +1,290 @@
+package com.dunncom.graphics;
+
+import java.net.URL;
+import java.util.Vector;
+
+/**
+ * Loads models nobody has asked for yet into a ModelCache in the
+ * background, so that when they are asked for they come straight from the
+ * cache.
+ * <P>
+ * Models are added with a priority, and the highest priority ones are
+ * loaded first, in the order added when the priorities are the same.  Up
+ * to a given number of models are loaded at once, each on a low priority
+ * thread with a ModelLoader of its own, and no more models are started
+ * once the cache holds the budget of bytes given.  Models already in the
+ * cache are skipped, and a model that can't be read isn't tried again.
+ * <P>
+ * Nothing is loaded until resume() is called.  pause() cancels the models
+ * being loaded, which are loaded again after the next resume(), so
+ * prefetching can be kept out of the way of a model the user is waiting
+ * for.
+ *
+ * @author Thomas Dunn
+ */
+
+public class ModelPrefetcher {
+
+  /**
+   * A model waiting to be prefetched
+   */
+  static class Request {
+    String filename;
+    int priority;
+
+    Request(String filename, int priority) {
+      this.filename = filename;
+      this.priority = priority;
+    }
+  }
+
+  /**
+   * Loads models for one prefetching thread.  Only needs to know whether
+   * the model it is loading couldn't be read.
+   */
+  class Worker implements Runnable, ModelLoader.Listener {
+    ModelLoader loader;
+    boolean failed;
+
+    Worker() {
+      loader = new ModelLoader(modelsURL, this);
+      loader.setCache(cache);
+    }
+
+    public void run() {
+      String modelFilename;
+      while ((modelFilename = nextModel(this)) != null) {
+        failed = false;
+        Polyhedron polyhedron = null;
+        try {
+          polyhedron = loader.loadNow(modelFilename);
+        }
+        catch (RuntimeException re) {
+          System.out.println("Caught RuntimeException in ModelPrefetcher in run()");
+          System.out.println(re);
+          re.printStackTrace();
+          failed = true;
+        }
+        modelDone(this, modelFilename, polyhedron, failed);
+      }
+    }
+
+    public void loadProgress(String modelFilename, long bytesRead, int vertices, int faces) {
+      // catches a model started just as pause() was called
+      if (isPaused()) {
+        loader.cancel();
+      }
+    }
+
+    public void modelPartlyLoaded(String modelFilename, Polyhedron polyhedron,
+                                  Point3D range, Point3D center) {}
+
+    public void modelLoaded(String modelFilename, Polyhedron polyhedron) {}
+
+    public void loadFailed(String modelFilename, String reason) {
+      failed = true;
+    }
+  }
+
+  /**
+   * Where the model files are
+   */
+  private URL modelsURL;
+
+  /**
+   * Where the models loaded are put
+   */
+  private ModelCache cache;
+
+  /**
+   * Most models to load at once
+   */
+  private int threadCount;
+
+  /**
+   * No more models are started once the cache holds this many bytes
+   */
+  private long byteBudget;
+
+  /**
+   * Models waiting to be prefetched, highest priority first
+   */
+  private Vector requests = new Vector();
+
+  /**
+   * Workers loading a model, and which model, by index
+   */
+  private Vector busyWorkers = new Vector();
+  private Vector busyFilenames = new Vector();
+
+  /**
+   * Number of worker threads started and not yet finished
+   */
+  private int running;
+
+  private boolean paused = true;
+
+  private int prefetched;
+  private int failures;
+
+  /**
+   * @param modelsURL the directory the model files are in, ending in '/'
+   * @param cache where to put the models loaded
+   * @param threadCount most models to load at once
+   * @param byteBudget no more models are started once the cache holds
+   * this many bytes, as estimated by Polyhedron.estimateBytes()
+   */
+  public ModelPrefetcher(URL modelsURL, ModelCache cache, int threadCount, long byteBudget) {
+    this.modelsURL = modelsURL;
+    this.cache = cache;
+    this.threadCount = threadCount;
+    this.byteBudget = byteBudget;
+  }
+
+  /**
+   * Adds a model to be prefetched
+   * @param priority models with higher priorities are loaded first
+   */
+  public synchronized void add(String modelFilename, int priority) {
+    int i = 0;
+    while (i < requests.size() && ((Request) requests.elementAt(i)).priority >= priority) {
+      i++;
+    }
+    requests.insertElementAt(new Request(modelFilename, priority), i);
+    startWorkers();
+  }
+
+  /**
+   * Starts or carries on prefetching
+   */
+  public synchronized void resume() {
+    paused = false;
+    startWorkers();
+    notifyAll();
+  }
+
+  /**
+   * Stops prefetching, cancelling the models being loaded, which go back
+   * to waiting.  Can be called from any thread.
+   */
+  public synchronized void pause() {
+    paused = true;
+    for (int i = 0; i < busyWorkers.size(); i++) {
+      ((Worker) busyWorkers.elementAt(i)).loader.cancel();
+    }
+  }
+
+  /**
+   * Starts as many worker threads as can be busy
+   */
+  private void startWorkers() {
+    while (! paused && running < threadCount && running < requests.size() &&
+           cache.getBytes() < byteBudget) {
+      Thread thread = new Thread(new Worker(), "ModelPrefetcher");
+      thread.setDaemon(true);
+      thread.setPriority(Thread.MIN_PRIORITY);
+      running++;
+      thread.start();
+    }
+  }
+
+  /**
+   * Called by a worker for the next model to load, waiting while paused
+   * @return the model, or null if the worker should finish because there
+   * is nothing left to load or the budget has been reached
+   */
+  synchronized String nextModel(Worker worker) {
+    while (true) {
+      while (paused) {
+        try {
+          wait();
+        }
+        catch (InterruptedException ie) {}
+      }
+      if (requests.size() == 0 || cache.getBytes() >= byteBudget) {
+        running--;
+        return null;
+      }
+
+      Request request = (Request) requests.elementAt(0);
+      requests.removeElementAt(0);
+      if (! cache.contains(request.filename) &&
+          busyFilenames.indexOf(request.filename) < 0) {
+        busyWorkers.addElement(worker);
+        busyFilenames.addElement(request.filename);
+        return request.filename;
+      }
+    }
+  }
+
+  /**
+   * Called by a worker when it has finished with a model, loaded or not
+   * @param polyhedron the model, or null if it wasn't loaded
+   * @param failed whether the model couldn't be read
+   */
+  synchronized void modelDone(Worker worker, String modelFilename,
+                              Polyhedron polyhedron, boolean failed) {
+    int i = busyWorkers.indexOf(worker);
+    busyWorkers.removeElementAt(i);
+    busyFilenames.removeElementAt(i);
+    if (polyhedron != null) {
+      prefetched++;
+    }
+    else if (failed) {
+      failures++;
+    }
+    else {
+      // cancelled by pause(), so try it again later, ahead of the rest
+      requests.insertElementAt(new Request(modelFilename, Integer.MAX_VALUE), 0);
+    }
+  }
+
+  /**
+   * @return whether prefetching is paused
+   */
+  public synchronized boolean isPaused() {
+    return paused;
+  }
+
+  /**
+   * @return whether any models are being prefetched right now
+   */
+  public synchronized boolean isLoading() {
+    return busyWorkers.size() > 0;
+  }
+
+  /**
+   * @return number of models waiting to be prefetched
+   */
+  public synchronized int getWaiting() {
+    return requests.size();
+  }
+
+  /**
+   * @return number of models prefetched into the cache
+   */
+  public synchronized int getPrefetched() {
+    return prefetched;
+  }
+
+  /**
+   * @return number of models that couldn't be read
+   */
+  public synchronized int getFailures() {
+    return failures;
+  }
+
+  /**
+   * returns string to look like:
+   * <pre>
+   * 12 prefetched, 0 failed, 1 loading, 8 waiting, paused
+   * </pre>
+   */
+  public synchronized String toString() {
+    return prefetched + " prefetched, " +
+           failures + " failed, " +
+           busyWorkers.size() + " loading, " +
+           requests.size() + " waiting" +
+           (paused ? ", paused" : "");
+  }
+}
@@ -2,8 +2,7 @@ package com.dunncom.graphics;
 
 import java.io.IOException;
 import java.io.BufferedReader;
-import java.util.Vector;
-import java.util.StringTokenizer;
+import java.io.InputStream;
 
 /**
  * For Parsing .nff 3D object files.  Generates Polyhedron instances from them.
@@ -24,29 +23,36 @@ public class NFFReader extends ThreeDimensionalObjectFileReader {
     super(file);
   }
 
+  public NFFReader(InputStream in) {
+    super(in);
+  }
+
   /**
    * Parses the file contents and returns the Polyhedron represented by the file
    */
   public Polyhedron parse() {
     polyhedron = new Polyhedron();
-    String line = null;
 
     try {
 
       // parse vertices
-      line = findVertices();
-      int numVertices = Integer.parseInt(line);
-      for (int i = 0; i < numVertices; i++) {
-        line = fileReader.readLine();
-        parseVertexLine(line);
+      findVertices();
+      int numVertices = scanner.nextInt();
+      for (int i = 0; i < numVertices && keepReading(); i++) {
+        scanner.nextLine();
+        parseVertexLine();
+      }
+
+      if (isCancelled()) {
+        return polyhedron;
       }
 
       // parse faces
-      line = findFaces();
-      int numFaces = Integer.parseInt(line);
-      for (int i = 0; i < numFaces; i++) {
-        line = fileReader.readLine();
-        parseFaceLine(line);
+      findFaces();
+      int numFaces = scanner.nextInt();
+      for (int i = 0; i < numFaces && keepReading(); i++) {
+        scanner.nextLine();
+        parseFaceLine();
       }
     }
     catch (IOException ioe) {
@@ -59,29 +65,13 @@ public class NFFReader extends ThreeDimensionalObjectFileReader {
   }
 
   /**
-   * Parses a line, interpreting it as a face
+   * Parses the scanner's line, interpreting it as a face
    */
-  public void parseFaceLine(String line) {
-    Vector pointsVector = new Vector();
-    String token = "";
-
-    st = new StringTokenizer(line);
-
+  public void parseFaceLine() {
     // discard one token.  This one tells us how many vertices there are in this face
-    // but we'll know that just from the vector's size
-    st.nextToken();
-
-    while (st.hasMoreTokens()) {
-      token = st.nextToken();
-      pointsVector.addElement(token);
-    }
-
-    Point3D points[] = new Point3D[pointsVector.size()];
-    for (int i = 0; i < pointsVector.size(); i++) {
-      points[i] = (Point3D) vertices.elementAt(Integer.parseInt((String) pointsVector.elementAt(i)));
-    }
+    // but we'll know that just from the number of tokens left
+    scanner.skipToken();
 
-    Polygon face = new Polygon(points);
-    polyhedron.addFace(face);
+    parseFaceIndices();
   }
 }
\ No newline at end of file
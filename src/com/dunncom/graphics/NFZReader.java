@@ -2,8 +2,7 @@ package com.dunncom.graphics;
 
 import java.io.IOException;
 import java.io.BufferedReader;
-import java.util.Vector;
-import java.util.StringTokenizer;
+import java.io.InputStream;
 
 /**
  * For Parsing .nff 3D object files where the vertices are numbered based on zero (teapot.nff).
@@ -23,6 +22,11 @@ public class NFZReader extends NFFReader {
 
   public NFZReader(BufferedReader file) {
     super(file);
-    vertices.removeAllElements();
+    firstVertexNumber = 0;
+  }
+
+  public NFZReader(InputStream in) {
+    super(in);
+    firstVertexNumber = 0;
   }
 }
\ No newline at end of file
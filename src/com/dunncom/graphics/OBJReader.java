@@ -2,8 +2,7 @@ package com.dunncom.graphics;
 
 import java.io.IOException;
 import java.io.BufferedReader;
-import java.util.Vector;
-import java.util.StringTokenizer;
+import java.io.InputStream;
 
 /**
  * For Parsing .obj 3D object files.  Generates Polyhedron instances from them.
@@ -26,29 +25,68 @@ public class OBJReader extends ThreeDimensionalObjectFileReader {
     super(file);
   }
 
+  public OBJReader(InputStream in) {
+    super(in);
+  }
+
+  /**
+   * For parsing one chunk of a file for parseParallel()
+   */
+  protected OBJReader() {
+  }
+
+  protected ThreeDimensionalObjectFileReader createChunkReader() {
+    return new OBJReader();
+  }
+
+  /**
+   * Finds the vertex and face lines the way parse() does, without parsing
+   * them.  The vertices run from the first line that isn't blank or a
+   * comment up to the first line starting with 'f', and the faces from
+   * there to the end of the file.
+   */
+  protected int[] findSections() throws IOException {
+    if (! findVertices()) {
+      return null;
+    }
+    int vertexStart = scanner.getLineStart();
+    while (scanner.nextLine()) {
+      if (scanner.firstByte() == 'f') {
+        int faceStart = scanner.getLineStart();
+        return new int[] {vertexStart, faceStart, faceStart, scanner.getLength()};
+      }
+    }
+
+    // no faces, which parse() will complain about
+    return null;
+  }
+
   /**
    * Parses the file contents and returns the Polyhedron represented by the file
    */
   public Polyhedron parse() {
     polyhedron = new Polyhedron();
-    String line = null;
 
     try {
 
       // parse vertices
-      line = findVertices();
-      parseVertexLine(line);
-      while ((line = fileReader.readLine()) != null) {
-        if (line.charAt(0) == 'f') {
+      findVertices();
+      parseVertexLine();
+      while (keepReading() && scanner.nextLine()) {
+        if (scanner.firstByte() == 'f') {
           break;
         }
-        parseVertexLine(line);
+        parseVertexLine();
+      }
+
+      if (isCancelled()) {
+        return polyhedron;
       }
 
       // parse faces
-      parseFaceLine(line);
-      while ((line = fileReader.readLine()) != null) {
-        parseFaceLine(line);
+      parseFaceLine();
+      while (keepReading() && scanner.nextLine()) {
+        parseFaceLine();
       }
     }
     catch (IOException ioe) {
@@ -61,50 +99,23 @@ public class OBJReader extends ThreeDimensionalObjectFileReader {
   }
 
   /**
-   * Parses a line, interpreting it as a face
+   * Parses the scanner's line, interpreting it as a face
    */
-  public void parseFaceLine(String line) {
-    Vector pointsVector = new Vector();
-    String token = "";
-
-    st = new StringTokenizer(line);
-
-    // discard one token.  This one tells us how many vertices there are in this face
-    // but we'll know that just from the vector's size
-    st.nextToken();
-
-    while (st.hasMoreTokens()) {
-      token = st.nextToken();
-      pointsVector.addElement(token);
-    }
-
-    Point3D points[] = new Point3D[pointsVector.size()];
-    for (int i = 0; i < pointsVector.size(); i++) {
-      points[i] = (Point3D) vertices.elementAt(Integer.parseInt((String) pointsVector.elementAt(i)));
-    }
+  public void parseFaceLine() {
+    // discard one token.  This one tells us it is a face line,
+    // but we already knew that
+    scanner.skipToken();
 
-    Polygon face = new Polygon(points);
-    polyhedron.addFace(face);
+    parseFaceIndices();
   }
 
   /**
-   * Parses a line, interpreting it as a vertex
+   * Parses the scanner's line, interpreting it as a vertex
    */
-  public void parseVertexLine(String line) {
-    double x = 0.0;
-    double y = 0.0;
-    double z = 0.0;
-
-    st = new StringTokenizer(line);
-
-    // discard one token.  This one tells us it is a face line,
+  public void parseVertexLine() {
+    // discard one token.  This one tells us it is a vertex line,
     // but we already knew that
-    st.nextToken();
-    x = new Double(st.nextToken()).doubleValue();
-    y = new Double(st.nextToken()).doubleValue();
-    z = new Double(st.nextToken()).doubleValue();
-
-    Point3D vertex = new Point3D(x, y, z);
-    vertices.addElement(vertex);
+    scanner.skipToken();
+    addVertex(scanner.nextDouble(), scanner.nextDouble(), scanner.nextDouble());
   }
 }
\ No newline at end of file
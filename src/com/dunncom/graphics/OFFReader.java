@@ -2,8 +2,7 @@ package com.dunncom.graphics;
 
 import java.io.IOException;
 import java.io.BufferedReader;
-import java.util.Vector;
-import java.util.StringTokenizer;
+import java.io.InputStream;
 
 /**
  * For Parsing .off 3D object files.  Generates Polyhedron instances from them.
@@ -23,44 +22,74 @@ import java.util.StringTokenizer;
 public class OFFReader extends ThreeDimensionalObjectFileReader {
 
   public OFFReader(BufferedReader file) {
-    vertices = new Vector();
+    super(file);
+    firstVertexNumber = 0;
+  }
+
+  public OFFReader(InputStream in) {
+    super(in);
+    firstVertexNumber = 0;
+  }
+
+  /**
+   * For parsing one chunk of a file for parseParallel()
+   */
+  protected OFFReader() {
+    firstVertexNumber = 0;
+  }
+
+  protected ThreeDimensionalObjectFileReader createChunkReader() {
+    return new OFFReader();
+  }
+
+  /**
+   * Finds the vertex and face lines the way parse() does, without parsing
+   * them.  The vertices run from the line after the first blank line up
+   * to the next blank line, and the faces from after that to the end of
+   * the file.
+   */
+  protected int[] findSections() throws IOException {
+    if (! findVertices()) {
+      return null;
+    }
+    int vertexStart = scanner.getLineStart();
+    int length = scanner.getLength();
+    while (scanner.nextLine()) {
+      if (scanner.isBlankLine()) {
+        return new int[] {vertexStart, scanner.getLineStart(), scanner.getNextLineStart(), length};
+      }
+    }
 
-    fileReader = file;
+    // no blank line after the vertices, so no faces
+    return new int[] {vertexStart, length, length, length};
   }
 
   /**
    * Pass through text at beginning of file, possibly parsing, possibly skipping
    * until vertices are encountered
    *
-   * @return the first line representing a vertex
+   * @return false if the end of the file was reached first, otherwise the
+   * scanner is on the first line representing a vertex
    */
-  public String findVertices() {
-    String line = null;
-
+  public boolean findVertices() {
     try {
-      while((line = fileReader.readLine()) != null) {
-        line = line.trim();
-
+      while (scanner.nextLine()) {
         // keep looking until we find a blank line
-        if (line.length() != 0) {
-          continue;
-        }
-        // skip the line if it is a comment line
-        else {
+        if (scanner.isBlankLine()) {
           break;
         }
       }
 
-      // we have reached a blank line, so read one more and return it
-      // as the first vertex line
-      line = fileReader.readLine();
+      // we have reached a blank line, so move on one more line to the
+      // first vertex line
+      return scanner.nextLine();
     }
     catch (IOException ioe) {
       System.out.println("Caught IOException in ThreeDimensionalObjectFileReader in findVertices()");
       System.out.println(ioe);
       ioe.printStackTrace();
     }
-    return line;
+    return false;
   }
 
   /**
@@ -68,25 +97,23 @@ public class OFFReader extends ThreeDimensionalObjectFileReader {
    */
   public Polyhedron parse() {
     polyhedron = new Polyhedron();
-    String line = null;
 
     try {
       // parse vertices
-      line = findVertices();
-      parseVertexLine(line);
-      while ((line = fileReader.readLine()) != null) {
+      findVertices();
+      parseVertexLine();
+      while (keepReading() && scanner.nextLine()) {
         // if it is a blank line, we have reached end of vertices
-        line = line.trim();
-        if (line.length() == 0) {
+        if (scanner.isBlankLine()) {
           break;
         }
 
-        parseVertexLine(line);
+        parseVertexLine();
       }
 
       // parse faces
-      while ((line = fileReader.readLine()) != null) {
-        parseFaceLine(line);
+      while (keepReading() && scanner.nextLine()) {
+        parseFaceLine();
       }
     }
     catch (IOException ioe) {
@@ -99,29 +126,13 @@ public class OFFReader extends ThreeDimensionalObjectFileReader {
   }
 
   /**
-   * Parses a line, interpreting it as a face
+   * Parses the scanner's line, interpreting it as a face
    */
-  public void parseFaceLine(String line) {
-    Vector pointsVector = new Vector();
-    String token = "";
-
-    st = new StringTokenizer(line);
-
+  public void parseFaceLine() {
     // discard one token.  This one tells us how many vertices there are in this face
-    // but we'll know that just from the vector's size
-    st.nextToken();
-
-    while (st.hasMoreTokens()) {
-      token = st.nextToken();
-      pointsVector.addElement(token);
-    }
-
-    Point3D points[] = new Point3D[pointsVector.size()];
-    for (int i = 0; i < pointsVector.size(); i++) {
-      points[i] = (Point3D) vertices.elementAt(Integer.parseInt((String) pointsVector.elementAt(i)));
-    }
+    // but we'll know that just from the number of tokens left
+    scanner.skipToken();
 
-    Polygon face = new Polygon(points);
-    polyhedron.addFace(face);
+    parseFaceIndices();
   }
 }
\ No newline at end of file
@@ -2,8 +2,7 @@ package com.dunncom.graphics;
 
 import java.io.IOException;
 import java.io.BufferedReader;
-import java.util.Vector;
-import java.util.StringTokenizer;
+import java.io.InputStream;
 
 /**
  * For Parsing .off 3D object files where vertices are 1 based rather than
@@ -25,32 +24,11 @@ public class OFOReader extends OFFReader {
 
   public OFOReader(BufferedReader reader) {
     super(reader);
+    firstVertexNumber = 1;
   }
 
-  /**
-   * Parses a line, interpreting it as a face
-   */
-  public void parseFaceLine(String line) {
-    Vector pointsVector = new Vector();
-    String token = "";
-
-    st = new StringTokenizer(line);
-
-    // discard one token.  This one tells us how many vertices there are in this face
-    // but we'll know that just from the vector's size
-    st.nextToken();
-
-    while (st.hasMoreTokens()) {
-      token = st.nextToken();
-      pointsVector.addElement(token);
-    }
-
-    Point3D points[] = new Point3D[pointsVector.size()];
-    for (int i = 0; i < pointsVector.size(); i++) {
-      points[i] = (Point3D) vertices.elementAt(Integer.parseInt((String) pointsVector.elementAt(i)) - 1);
-    }
-
-    Polygon face = new Polygon(points);
-    polyhedron.addFace(face);
+  public OFOReader(InputStream in) {
+    super(in);
+    firstVertexNumber = 1;
   }
 }
\ No newline at end of file
@@ -0,0 +1,281 @@
+package com.dunncom.graphics;
+
+/**
+ * Splits per-vertex and per-face work for large models across a few worker
+ * threads.  The work is given as a RangeTask, which is handed one range of
+ * indices per thread; the calling thread does the first range itself and
+ * waits for the workers to finish the rest.
+ * <P>
+ * Anything smaller than the threshold just runs on the calling thread, so
+ * small models never start the worker threads at all.
+ * <P>
+ * Only one task at a time can use a set of workers, so parsing has workers
+ * of its own, used by runParse().  A big model being parsed in the
+ * background then never holds up the transforms of the frame being drawn.
+ *
+ * @author Thomas Dunn
+ */
+
+public class ParallelTransform {
+
+  /**
+   * Work that can be done in separate pieces over a range of indices
+   */
+  public interface RangeTask {
+    /**
+     * Does the work for indices start up to, but not including, end
+     */
+    void run(int start, int end);
+  }
+
+  /**
+   * Fewest indices worth splitting between threads
+   */
+  private static int threshold = 2048;
+
+  /**
+   * How many threads, including the calling thread, share the work
+   */
+  private static int threadCount = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * The workers for drawing, and the workers for parsing, each started the
+   * first time a big enough task comes along
+   */
+  private static ParallelTransform workers;
+  private static ParallelTransform parseWorkers;
+
+  /**
+   * Runs a task over the indices 0 up to count, split across threads if
+   * count is at least the threshold.  If any range throws, the other
+   * ranges are finished and then the exception is thrown here.
+   */
+  public static void run(int count, RangeTask task) {
+    run(count, task, false);
+  }
+
+  /**
+   * Runs a task the same as run(), but on the workers kept for parsing
+   */
+  public static void runParse(int count, RangeTask task) {
+    run(count, task, true);
+  }
+
+  private static void run(int count, RangeTask task, boolean parsing) {
+    ParallelTransform pool = null;
+    if (count >= getThreshold()) {
+      pool = getWorkers(parsing);
+    }
+
+    if (pool == null) {
+      task.run(0, count);
+    }
+    else {
+      pool.split(count, task);
+    }
+  }
+
+  public static synchronized int getThreshold() {
+    return threshold;
+  }
+
+  public static synchronized void setThreshold(int newThreshold) {
+    threshold = newThreshold;
+  }
+
+  public static synchronized int getThreadCount() {
+    return threadCount;
+  }
+
+  /**
+   * Changes how many threads share the work.  The old workers are stopped.
+   */
+  public static synchronized void setThreadCount(int newThreadCount) {
+    threadCount = Math.max(newThreadCount, 1);
+    if (workers != null) {
+      workers.shutdown();
+      workers = null;
+    }
+    if (parseWorkers != null) {
+      parseWorkers.shutdown();
+      parseWorkers = null;
+    }
+  }
+
+  /**
+   * @param parsing true for the workers kept for parsing
+   */
+  private static synchronized ParallelTransform getWorkers(boolean parsing) {
+    if (threadCount < 2) {
+      return null;
+    }
+    if (parsing) {
+      if (parseWorkers == null) {
+        parseWorkers = new ParallelTransform(threadCount, "ParallelTransform parse worker ");
+      }
+      return parseWorkers;
+    }
+    if (workers == null) {
+      workers = new ParallelTransform(threadCount, "ParallelTransform worker ");
+    }
+    return workers;
+  }
+
+  /**
+   * Worker threads, not counting the calling thread
+   */
+  private Thread threads[];
+
+  /**
+   * Guards the fields below, and is what the threads wait on
+   */
+  private Object lock = new Object();
+
+  /**
+   * Counts tasks handed out, so a worker can tell when there is a new one
+   */
+  private int generation;
+
+  private RangeTask task;
+  private int count;
+
+  /**
+   * Number of workers still running their piece of the current task
+   */
+  private int pending;
+
+  /**
+   * The first exception thrown by a worker running the current task, or
+   * null
+   */
+  private Throwable failure;
+
+  private boolean shutdown;
+
+  /**
+   * @param name what the threads are called, before their number
+   */
+  private ParallelTransform(int threadCount, String name) {
+    threads = new Thread[threadCount - 1];
+    for (int i = 0; i < threads.length; i++) {
+      final int slice = i + 1;
+      threads[i] = new Thread(name + slice) {
+        public void run() {
+          work(slice);
+        }
+      };
+      threads[i].setDaemon(true);
+      threads[i].start();
+    }
+  }
+
+  /**
+   * Hands the task out to the workers, does the first piece, and waits
+   * for the rest.  The workers are always waited for, even if the first
+   * piece throws, so none is still running this task when the next one is
+   * handed out.  If a worker's piece threw, that is thrown here, on the
+   * calling thread, rather than returning with the work half done.
+   */
+  private synchronized void split(int count, RangeTask task) {
+    synchronized (lock) {
+      this.task = task;
+      this.count = count;
+      pending = threads.length;
+      failure = null;
+      generation++;
+      lock.notifyAll();
+    }
+
+    Throwable workerFailure;
+    try {
+      runSlice(task, count, 0);
+    }
+    finally {
+      synchronized (lock) {
+        while (pending > 0) {
+          try {
+            lock.wait();
+          }
+          catch (InterruptedException ie) {}
+        }
+        this.task = null;
+        workerFailure = failure;
+        failure = null;
+      }
+    }
+
+    if (workerFailure instanceof RuntimeException) {
+      throw (RuntimeException) workerFailure;
+    }
+    if (workerFailure instanceof Error) {
+      throw (Error) workerFailure;
+    }
+  }
+
+  /**
+   * What each worker thread does: wait for a task, do its piece, repeat
+   */
+  private void work(int slice) {
+    int seen = 0;
+    while (true) {
+      RangeTask currentTask;
+      int currentCount;
+      synchronized (lock) {
+        while (generation == seen && ! shutdown) {
+          try {
+            lock.wait();
+          }
+          catch (InterruptedException ie) {}
+        }
+        if (shutdown) {
+          return;
+        }
+        seen = generation;
+        currentTask = task;
+        currentCount = count;
+      }
+
+      // whatever the piece throws is handed to the caller by split(), and
+      // the worker carries on with the next task
+      Throwable thrown = null;
+      try {
+        runSlice(currentTask, currentCount, slice);
+      }
+      catch (Throwable t) {
+        thrown = t;
+      }
+
+      synchronized (lock) {
+        if (thrown != null && failure == null) {
+          failure = thrown;
+        }
+        pending--;
+        if (pending == 0) {
+          lock.notifyAll();
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs the piece of the task belonging to one thread
+   */
+  private void runSlice(RangeTask task, int count, int slice) {
+    int slices = threads.length + 1;
+    int start = (int) (((long) count * slice) / slices);
+    int end = (int) (((long) count * (slice + 1)) / slices);
+    if (start < end) {
+      task.run(start, end);
+    }
+  }
+
+  /**
+   * Stops the worker threads, once any task in progress is finished
+   */
+  private synchronized void shutdown() {
+    synchronized (lock) {
+      shutdown = true;
+      lock.notifyAll();
+    }
+  }
+}
@@ -36,29 +36,55 @@ public class Polygon {
   public double I2;
 
 
+  /**
+   * The default light source 1 unit vector, shared by every polygon until
+   * updateL1() gives it its own
+   */
+  private static final Point3D DEFAULT_L1 = new Point3D(1, 0, 1);
+
+  /**
+   * The default light source 2 unit vector, shared by every polygon until
+   * updateL2() gives it its own
+   */
+  private static final Point3D DEFAULT_L2 = new Point3D(-.3, 0, 1);
+
+  static {
+    Point3D.normalizeVector(DEFAULT_L1);
+    Point3D.normalizeVector(DEFAULT_L2);
+  }
+
   /**
    * The light source 1 unit vector, from right and in front of
    */
-  public Point3D L1 = new Point3D(1, 0, 1);
+  public Point3D L1 = DEFAULT_L1;
 
   /**
    * The light source 1 unit vector, from slightly left and in front of
    */
-  public Point3D L2 = new Point3D(-.3, 0, 1);
+  public Point3D L2 = DEFAULT_L2;
 
   /**
    * first point of unit vector in z direction
    */
-  public Point3D u1 = new Point3D(0.0, 0.0, 0.0);
+  public static final Point3D u1 = new Point3D(0.0, 0.0, 0.0);
   /**
    * second point of unit vector in z direction
    */
-  public Point3D u2 = new Point3D(0.0, 0.0, 1.0);
+  public static final Point3D u2 = new Point3D(0.0, 0.0, 1.0);
 
   public Point3D points[];
 
   /**
-   * Plane Co-efficient
+   * Indices of the points in the mesh of the Polyhedron this polygon is a
+   * face of, or null if it is not part of a Polyhedron
+   */
+  public int indices[];
+
+  /**
+   * Plane Co-efficient.  A Polygon from Polyhedron.getFace() has the plane
+   * co-efficients of the face as loaded; call
+   * computeNormal(double[], double[], double[]) with the view coordinates
+   * of the Polyhedron for the plane as it is viewed.
    */
   public double A;
 
@@ -85,8 +111,6 @@ public class Polygon {
 
   public Polygon(Point3D points[]) {
     this.points = points;
-    Point3D.normalizeVector(L1);
-    Point3D.normalizeVector(L2);
     computeNormal();
   }
 
@@ -112,13 +136,41 @@ public class Polygon {
    * @param g A graphics context object
    */
   public void draw(Graphics g) {
+    computeColor();
+
     int verticesX[] = new int[points.length];
     int verticesY[] = new int[points.length];
     for (int i = 0; i < points.length; i++) {
       verticesX[i] = (int) points[i].x;
       verticesY[i] = (int) points[i].y;
     }
+    draw(g, verticesX, verticesY);
+  }
+
+  /**
+   * polygon draws itself at the positions its indices select from the
+   * given coordinate arrays, rather than at its points, in its current
+   * color
+   * @param g A graphics context object
+   * @param x x coordinates of all the vertices of the Polyhedron
+   * @param y y coordinates of all the vertices of the Polyhedron
+   */
+  public void draw(Graphics g, double x[], double y[]) {
+    int verticesX[] = new int[indices.length];
+    int verticesY[] = new int[indices.length];
+    for (int i = 0; i < indices.length; i++) {
+      verticesX[i] = (int) x[indices[i]];
+      verticesY[i] = (int) y[indices[i]];
+    }
+    draw(g, verticesX, verticesY);
+  }
 
+  /**
+   * Computes the illumination of this face, and from it the color the face
+   * is shaded
+   * @return the shaded color, which is also kept in color
+   */
+  public Color computeColor() {
     computeIllumination();
 
     double I = (I1 + I2) / 2;
@@ -126,7 +178,10 @@ public class Polygon {
     color = new Color((int)(Math.abs(I) * 255),
                       (int)(Math.abs(I) * 255),
                       (int)(Math.abs(I) * 255));
+    return color;
+  }
 
+  private void draw(Graphics g, int verticesX[], int verticesY[]) {
     // if polygon should be filled, fill it in
     if (filled) {
       g.setColor(color);
@@ -153,21 +208,43 @@ public class Polygon {
    * sign of C
    */
   public void computeNormal() {
-    A = (points[0].y * (points[1].z - points[2].z)) +
-        (points[1].y * (points[2].z - points[0].z)) +
-        (points[2].y * (points[0].z - points[1].z));
+    computeNormal(points[0].x, points[0].y, points[0].z,
+                  points[1].x, points[1].y, points[1].z,
+                  points[2].x, points[2].y, points[2].z);
+  }
+
+  /**
+   * Computes the plane co-efficients for this polygon from the positions
+   * its indices select from the given coordinate arrays, rather than from
+   * its points
+   */
+  public void computeNormal(double x[], double y[], double z[]) {
+    int i0 = indices[0];
+    int i1 = indices[1];
+    int i2 = indices[2];
+    computeNormal(x[i0], y[i0], z[i0],
+                  x[i1], y[i1], z[i1],
+                  x[i2], y[i2], z[i2]);
+  }
+
+  private void computeNormal(double x0, double y0, double z0,
+                             double x1, double y1, double z1,
+                             double x2, double y2, double z2) {
+    A = (y0 * (z1 - z2)) +
+        (y1 * (z2 - z0)) +
+        (y2 * (z0 - z1));
 
-    B = (points[0].z * (points[1].x - points[2].x)) +
-        (points[1].z * (points[2].x - points[0].x)) +
-        (points[2].z * (points[0].x - points[1].x));
+    B = (z0 * (x1 - x2)) +
+        (z1 * (x2 - x0)) +
+        (z2 * (x0 - x1));
 
-    C = (points[0].x * (points[1].y - points[2].y)) +
-        (points[1].x * (points[2].y - points[0].y)) +
-        (points[2].x * (points[0].y - points[1].y));
+    C = (x0 * (y1 - y2)) +
+        (x1 * (y2 - y0)) +
+        (x2 * (y0 - y1));
 
-    D = (-1*points[0].x * ((points[1].y * points[2].z) - (points[2].y * points[1].z))) -
-        (points[1].x * ((points[2].y * points[0].z) - (points[0].y * points[2].z))) -
-        (points[2].x * ((points[0].y * points[1].z) - (points[1].y * points[0].z)));
+    D = (-1*x0 * ((y1 * z2) - (y2 * z1))) -
+        (x1 * ((y2 * z0) - (y0 * z2))) -
+        (x2 * ((y0 * z1) - (y1 * z0)));
   }
 
   /**
@@ -1,52 +1,413 @@
 package com.dunncom.graphics;
 
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Color;
+import java.awt.geom.GeneralPath;
 import java.util.Vector;
+import java.util.Hashtable;
 
 /**
  * A simple polyhedron representation.  Consists of collection of surfaces
  * or faces, and a collection of points, the vertices of the faces.
  * To create and define a polyhedron, just create a new Polyhedron object
- * and then add its faces with the addFace(Polygon) method.  The faces are
- * just Polygon objects
+ * and then add its faces with the addFace(Polygon) method.
+ * <P>
+ * The faces are not kept as Polygon objects, just as runs of vertex
+ * indices in the Mesh, with everything else about them in arrays indexed
+ * by face.  getFace() makes a Polygon for a face when one is wanted.
+ * <P>
+ * When building a large polyhedron, such as from a file, it is faster to
+ * register each vertex once with addVertex() and then add the faces by
+ * vertex index with addFace(int[]).
+ * <P>
+ * The coordinates themselves live in a Mesh, which keeps them in flat
+ * arrays.  The points Vector is a view over the mesh: the Point3D
+ * objects in points are brought up to date with updatePoints() whenever
+ * the mesh is transformed.
+ * <P>
+ * To show the polyhedron from different angles, leave the mesh alone and
+ * call project(Matrix3D) instead.  That puts the transformed coordinates
+ * in the viewX, viewY and viewZ arrays, which are what draw() uses, so
+ * the polyhedron itself stays as it was loaded.  For large polyhedrons the
+ * work of projecting is shared out between threads by ParallelTransform.
+ * <P>
+ * The unit normals of the faces are worked out once, in model space.
+ * Rather than turning every normal with the view, project() turns the
+ * direction we look in and the lights back into model space, and the
+ * normals are culled and shaded against those.  The plane co-efficients of
+ * the faces are not recomputed as it turns.
  *
  * @author Thomas Dunn
  */
 public class Polyhedron {
 
+  /**
+   * Rough bytes of heap taken by each vertex outside the mesh: its
+   * Point3D and the Vector and array slots pointing at it
+   */
+  static final int VERTEX_OBJECT_BYTES = 64;
+
+  /**
+   * Rough bytes of heap the wireframe path takes for each edge: a moveTo
+   * and a lineTo, each two floats and a type byte, and room to grow
+   */
+  static final int PATH_EDGE_BYTES = 24;
+
   /**
    * Collection of points that are the vertices of this Polyhedron
    */
   public Vector points;
 
   /**
-   * Collection of Polygons that are the faces of this Polyhedron
+   * The vertex coordinates and face indices of this Polyhedron in flat
+   * arrays.  Vertex i of the mesh is points.elementAt(i).
+   */
+  public Mesh mesh;
+
+  /**
+   * The Point3D objects of points in an array, for copying the mesh
+   * coordinates back into them without going through the Vector
+   */
+  private Point3D pointViews[];
+
+  /**
+   * Index of each Point3D in points, for finding the vertices of faces
+   * added with addFace(Polygon) without searching points.  Null until
+   * addVertex(Point3D) is first used.
+   */
+  private Hashtable pointIndices;
+
+  /**
+   * x coordinates of the vertices, transformed by the last view matrix
+   */
+  public double viewX[];
+
+  /**
+   * y coordinates of the vertices, transformed by the last view matrix
+   */
+  public double viewY[];
+
+  /**
+   * z coordinates of the vertices, transformed by the last view matrix
    */
-  public Vector faces;
+  public double viewZ[];
+
+  /**
+   * The direction we look in, which is the z axis of the view, turned back
+   * into model space for the last view matrix.  A face is facing us when
+   * its normal points against this.
+   */
+  private Point3D viewDirection = new Point3D(0.0, 0.0, 1.0);
+
+  /**
+   * Grey level of each face, as shaded by lighting for the last view
+   * matrix, from 0 to Lighting.LEVELS - 1 kept in a byte, so read it with
+   * faceShades[i] & 0xff
+   */
+  public byte faceShades[];
+
+  /**
+   * The lights the faces are shaded by
+   */
+  private Lighting lighting;
+
+  /**
+   * The matrix the view coordinates were last computed with, null if the
+   * view coordinates are just the mesh coordinates
+   */
+  private Matrix3D viewMatrix;
+
+  /**
+   * whether the view coordinates are up to date with the mesh
+   */
+  private boolean projected;
+
+  /**
+   * whether the model space normals in the mesh are up to date
+   */
+  private boolean normalsComputed;
+
+  /**
+   * Transforms a range of vertices into the view coordinates
+   */
+  private ParallelTransform.RangeTask projectVertices = new ParallelTransform.RangeTask() {
+    public void run(int start, int end) {
+      if (viewMatrix != null) {
+        viewMatrix.transformCoordinates(mesh.x, mesh.y, mesh.z, start, end, viewX, viewY, viewZ);
+      }
+      else {
+        System.arraycopy(mesh.x, start, viewX, start, end - start);
+        System.arraycopy(mesh.y, start, viewY, start, end - start);
+        System.arraycopy(mesh.z, start, viewZ, start, end - start);
+      }
+    }
+  };
+
+  /**
+   * Shades a range of faces
+   */
+  private ParallelTransform.RangeTask projectFaces = new ParallelTransform.RangeTask() {
+    public void run(int start, int end) {
+      lighting.shade(mesh, start, end, faceShades);
+    }
+  };
 
   /**
    * whether this is a shaded filled polyhedron or a wireframe
    */
   private boolean filled;
 
+  /**
+   * Puts the faces in order from back to front when drawing them, null
+   * if they are drawn in the order they were added
+   */
+  private DepthSorter depthSorter;
+
+  /**
+   * Screen coordinates of the face being drawn, kept from face to face
+   */
+  private int drawX[] = new int[4];
+  private int drawY[] = new int[4];
+
+  /**
+   * whether the edge list in the mesh is up to date with the faces
+   */
+  private boolean edgesComputed;
+
+  /**
+   * Screen coordinates of every vertex, for drawing the wireframe
+   */
+  private int screenX[];
+  private int screenY[];
+
+  /**
+   * The whole wireframe as one path, emptied and filled again each frame
+   */
+  private GeneralPath wireframe = new GeneralPath();
+
+  /**
+   * Times the stages of project(), or null
+   */
+  private FrameTiming frameTiming;
+
+  /**
+   * How many faces the last call to draw() drew
+   */
+  private int facesDrawn;
+
   public Polyhedron() {
     points = new Vector();
-    faces = new Vector();
+    mesh = new Mesh();
+    pointViews = new Point3D[16];
+    lighting = new Lighting();
+  }
+
+  /**
+   * Makes a Polyhedron of a mesh that is already built, such as one read
+   * from a binary mesh file, without going through addVertex() and
+   * addFace() for each vertex and face
+   */
+  public Polyhedron(Mesh mesh) {
+    this.mesh = mesh;
+    int count = mesh.vertexCount;
+    points = new Vector(count);
+    pointViews = new Point3D[Math.max(count, 16)];
+    for (int i = 0; i < count; i++) {
+      Point3D p = new Point3D(mesh.x[i], mesh.y[i], mesh.z[i]);
+      points.addElement(p);
+      pointViews[i] = p;
+    }
+    lighting = new Lighting();
+
+    int largestFace = drawX.length;
+    for (int f = 0; f < mesh.faceCount; f++) {
+      largestFace = Math.max(largestFace, mesh.faceSize(f));
+    }
+    drawX = new int[largestFace];
+    drawY = new int[largestFace];
   }
 
   /**
    * Adds a face to this Polyhedron.  The points of the polygon are in turn
-   * added here too, and duplication of points is not an issue.
+   * added here too, and duplication of points is not an issue.  Only the
+   * points are kept, not the Polygon itself.
    * @param poly the polygon face you're adding to this Polyhedron
    */
   public void addFace(Polygon poly) {
-    faces.addElement(poly);
+    int indices[] = new int[poly.points.length];
     for (int i = 0; i < poly.points.length; i++) {
-      if (! points.contains(poly.points[i])) {
-        points.addElement(poly.points[i]);
+      indices[i] = addVertex(poly.points[i]);
+    }
+    poly.indices = indices;
+    addFace(indices);
+  }
+
+  /**
+   * Adds a face to this Polyhedron, made of vertices already added with
+   * addVertex()
+   * @param indices the indices of the vertices of the face, in order
+   * @return the index of the new face
+   */
+  public int addFace(int indices[]) {
+    return addFace(indices, indices.length);
+  }
+
+  /**
+   * Adds a face to this Polyhedron, made of vertices already added with
+   * addVertex()
+   * @param indices the indices of the vertices of the face, in order
+   * @param count the number of vertices in the face, the rest of indices
+   * being ignored
+   * @return the index of the new face
+   */
+  public int addFace(int indices[], int count) {
+    int face = mesh.addFace(indices, count);
+    if (count > drawX.length) {
+      drawX = new int[count];
+      drawY = new int[count];
+    }
+    projected = false;
+    normalsComputed = false;
+    edgesComputed = false;
+    return face;
+  }
+
+  /**
+   * Adds a vertex to this Polyhedron, unless the point is already one of
+   * its vertices
+   * @param p the point to add
+   * @return the index of the vertex, for use with addFace(int[])
+   */
+  public int addVertex(Point3D p) {
+    if (pointIndices == null) {
+      pointIndices = new Hashtable();
+      for (int i = 0; i < mesh.vertexCount; i++) {
+        pointIndices.put(pointViews[i], new Integer(i));
       }
     }
+    Integer index = (Integer) pointIndices.get(p);
+    if (index != null) {
+      return index.intValue();
+    }
+
+    return addPoint(p);
+  }
+
+  /**
+   * Adds a new vertex to this Polyhedron
+   * @return the index of the vertex, for use with addFace(int[])
+   */
+  public int addVertex(double x, double y, double z) {
+    return addPoint(new Point3D(x, y, z));
+  }
+
+  private int addPoint(Point3D p) {
+    int newIndex = mesh.addVertex(p.x, p.y, p.z);
+    points.addElement(p);
+    if (newIndex == pointViews.length) {
+      Point3D newViews[] = new Point3D[pointViews.length * 2];
+      System.arraycopy(pointViews, 0, newViews, 0, pointViews.length);
+      pointViews = newViews;
+    }
+    pointViews[newIndex] = p;
+    if (pointIndices != null) {
+      pointIndices.put(p, new Integer(newIndex));
+    }
+    return newIndex;
+  }
+
+  /**
+   * Shrinks the mesh and the vertex arrays to just hold the vertices and
+   * faces there are, once the model is loaded
+   */
+  public void trimToSize() {
+    mesh.trimToSize();
+    points.trimToSize();
+    if (pointViews.length > mesh.vertexCount) {
+      Point3D newViews[] = new Point3D[Math.max(mesh.vertexCount, 1)];
+      System.arraycopy(pointViews, 0, newViews, 0, mesh.vertexCount);
+      pointViews = newViews;
+    }
+  }
+
+  /**
+   * Copies the mesh coordinates back into the Point3D objects in points.
+   * Call after changing the coordinates in the mesh.
+   */
+  public void updatePoints() {
+    double x[] = mesh.x;
+    double y[] = mesh.y;
+    double z[] = mesh.z;
+    for (int i = 0; i < mesh.vertexCount; i++) {
+      Point3D p = pointViews[i];
+      p.x = x[i];
+      p.y = y[i];
+      p.z = z[i];
+    }
+    projected = false;
+    normalsComputed = false;
+  }
+
+  /**
+   * Works out the face normals now, on the calling thread, so the next
+   * project() doesn't have to.  Nothing is transformed or shaded, so
+   * none of the ParallelTransform workers the frames are drawn with are
+   * used.
+   */
+  public void computeNormals() {
+    mesh.computeFaceNormals();
+    normalsComputed = true;
+  }
+
+  /**
+   * Transforms the vertices of this Polyhedron into viewX, viewY and viewZ
+   * and shades the faces into faceShades.  The mesh and points are left
+   * as they are.
+   * @param view the matrix to transform by, or null to view the mesh as is
+   */
+  public void project(Matrix3D view) {
+    int count = mesh.vertexCount;
+    if (viewX == null || viewX.length < count) {
+      viewX = new double[count];
+      viewY = new double[count];
+      viewZ = new double[count];
+    }
+    int faceCount = mesh.faceCount;
+    if (faceShades == null || faceShades.length < faceCount) {
+      faceShades = new byte[faceCount];
+    }
+    if (frameTiming != null) {
+      frameTiming.mark();
+    }
+    if (! normalsComputed) {
+      mesh.computeFaceNormals();
+      normalsComputed = true;
+    }
+    if (frameTiming != null) {
+      frameTiming.stageDone(FrameTiming.NORMALS);
+    }
+
+    viewMatrix = view;
+    viewDirection.x = 0.0;
+    viewDirection.y = 0.0;
+    viewDirection.z = 1.0;
+    if (view != null) {
+      view.inverseTransformNormal(viewDirection);
+    }
+    lighting.prepare(view);
+    if (frameTiming != null) {
+      frameTiming.mark();
+    }
+    ParallelTransform.run(count, projectVertices);
+    if (frameTiming != null) {
+      frameTiming.stageDone(FrameTiming.TRANSFORM);
+    }
+    ParallelTransform.run(faceCount, projectFaces);
+    if (frameTiming != null) {
+      frameTiming.stageDone(FrameTiming.SHADE);
+    }
+    projected = true;
   }
 
   public static Polyhedron createPyramid5Polyhedron() {
@@ -99,43 +460,181 @@ public class Polyhedron {
   }
 
   public void updateL1(Point3D p) {
-    for (int i = 0; i < faces.size(); i++) {
-      ((Polygon)faces.elementAt(i)).updateL1(p);
-    }
+    lighting.setLight1(p);
+    projected = false;
   }
   public void updateL2(Point3D p) {
-    for (int i = 0; i < faces.size(); i++) {
-      ((Polygon)faces.elementAt(i)).updateL2(p);
+    lighting.setLight2(p);
+    projected = false;
+  }
+
+  public Lighting getLighting() {
+    return lighting;
+  }
+
+  /**
+   * @return the number of faces
+   */
+  public int getFaceCount() {
+    return mesh.faceCount;
+  }
+
+  /**
+   * Makes a Polygon for face number i, made of the Point3D objects in
+   * points and shaded as it was last drawn.  A new Polygon is made each
+   * time, and changing it doesn't change this Polyhedron.
+   */
+  public Polygon getFace(int i) {
+    int start = mesh.faceStart[i];
+    int indices[] = new int[mesh.faceStart[i + 1] - start];
+    Point3D facePoints[] = new Point3D[indices.length];
+    for (int j = 0; j < indices.length; j++) {
+      indices[j] = mesh.faceVertices[start + j];
+      facePoints[j] = pointViews[indices[j]];
+    }
+    Polygon poly = new Polygon(facePoints);
+    poly.indices = indices;
+    poly.setFilled(filled);
+    if (projected) {
+      poly.setColor(Lighting.getColor(faceShades[i] & 0xff));
+    }
+    return poly;
+  }
+
+  /**
+   * @return whether face number i faces us, as viewed by the last call to
+   * project()
+   */
+  public boolean isFacing(int i) {
+    return (mesh.normalX[i] * viewDirection.x) +
+           (mesh.normalY[i] * viewDirection.y) +
+           (mesh.normalZ[i] * viewDirection.z) < 0;
+  }
+
+  /**
+   * Brings the view coordinates up to date if the mesh has changed since
+   * the last call to project()
+   */
+  public void ensureProjected() {
+    if (! projected) {
+      project(viewMatrix);
     }
   }
 
+  /**
+   * Draws the polyhedron as transformed by the last call to project()
+   */
   public void draw(Graphics g) {
-    for (int i = 0; i < this.faces.size(); i++) {
-      // only draw it if it is facing us, or it is a wireframe (filled = false)
-      Polygon face = (Polygon)faces.elementAt(i);
-      if (! filled || face.C < 0) {
-        face.draw(g);
+    ensureProjected();
+
+    if (! filled) {
+      drawWireframe(g);
+      facesDrawn = mesh.faceCount;
+      return;
+    }
+
+    // a filled polyhedron can be drawn back to front, so nearer faces are
+    // painted over farther ones, and none need culling
+    if (depthSorter != null && filled) {
+      int order[] = depthSorter.sort(mesh, viewZ);
+      for (int i = 0; i < mesh.faceCount; i++) {
+        drawFace(g, order[i]);
+      }
+      facesDrawn = mesh.faceCount;
+      return;
+    }
+
+    int drawn = 0;
+    for (int i = 0; i < mesh.faceCount; i++) {
+      // only draw it if it is facing us
+      if (isFacing(i)) {
+        drawFace(g, i);
+        drawn++;
       }
     }
+    facesDrawn = drawn;
   }
 
   /**
-   * Yields the average point, or average x, y, and z values for all the
-   * points in this polyhedron
+   * @return how many faces the last call to draw() drew, the rest being
+   * culled as facing away
    */
-  public Point3D averagePoint() {
-    double totalX = 0.0;
-    double totalY = 0.0;
-    double totalZ = 0.0;
-    int numPoints = points.size();
+  public int getFacesDrawn() {
+    return facesDrawn;
+  }
 
-    for (int i = 0; i < numPoints; i++) {
-      totalX += ((Point3D) points.elementAt(i)).x;
-      totalY += ((Point3D) points.elementAt(i)).y;
-      totalZ += ((Point3D) points.elementAt(i)).z;
+  /**
+   * @param frameTiming times the normals, transform and shade stages of
+   * project(), or null for no timing
+   */
+  public void setFrameTiming(FrameTiming frameTiming) {
+    this.frameTiming = frameTiming;
+  }
+
+  /**
+   * Draws every edge once, as one path, rather than the outline of every
+   * face, which would draw each edge shared by two faces twice
+   */
+  private void drawWireframe(Graphics g) {
+    if (! edgesComputed) {
+      mesh.computeEdges();
+      edgesComputed = true;
+    }
+
+    int count = mesh.vertexCount;
+    if (screenX == null || screenX.length < count) {
+      screenX = new int[count];
+      screenY = new int[count];
+    }
+    for (int i = 0; i < count; i++) {
+      screenX[i] = (int) viewX[i];
+      screenY[i] = (int) viewY[i];
     }
 
-    return new Point3D(totalX / numPoints, totalY / numPoints, totalZ / numPoints);
+    int edgeFrom[] = mesh.edgeFrom;
+    int edgeTo[] = mesh.edgeTo;
+    g.setColor(Color.black);
+    if (! (g instanceof Graphics2D)) {
+      for (int e = 0; e < mesh.edgeCount; e++) {
+        g.drawLine(screenX[edgeFrom[e]], screenY[edgeFrom[e]],
+                   screenX[edgeTo[e]], screenY[edgeTo[e]]);
+      }
+      return;
+    }
+
+    wireframe.reset();
+    for (int e = 0; e < mesh.edgeCount; e++) {
+      wireframe.moveTo(screenX[edgeFrom[e]], screenY[edgeFrom[e]]);
+      wireframe.lineTo(screenX[edgeTo[e]], screenY[edgeTo[e]]);
+    }
+    ((Graphics2D) g).draw(wireframe);
+  }
+
+  private void drawFace(Graphics g, int i) {
+    int start = mesh.faceStart[i];
+    int count = mesh.faceStart[i + 1] - start;
+    for (int j = 0; j < count; j++) {
+      int vertex = mesh.faceVertices[start + j];
+      drawX[j] = (int) viewX[vertex];
+      drawY[j] = (int) viewY[vertex];
+    }
+
+    if (filled) {
+      g.setColor(Lighting.getColor(faceShades[i] & 0xff));
+      g.fillPolygon(drawX, drawY, count);
+    }
+
+    // draw black wire frames
+    g.setColor(Color.black);
+    g.drawPolygon(drawX, drawY, count);
+  }
+
+  /**
+   * Yields the average point, or average x, y, and z values for all the
+   * points in this polyhedron
+   */
+  public Point3D averagePoint() {
+    return mesh.averagePoint();
   }
 
   /**
@@ -143,23 +642,7 @@ public class Polyhedron {
    * encoded in a Point3D object
    */
   public Point3D maximums() {
-    double x = ((Point3D) points.elementAt(0)).x;
-    double y = ((Point3D) points.elementAt(0)).y;
-    double z = ((Point3D) points.elementAt(0)).z;
-
-    for (int i = 0; i < points.size(); i++) {
-      if (((Point3D) points.elementAt(i)).x > x) {
-        x = ((Point3D) points.elementAt(i)).x;
-      }
-      if (((Point3D) points.elementAt(i)).y > y) {
-        y = ((Point3D) points.elementAt(i)).y;
-      }
-      if (((Point3D) points.elementAt(i)).z > z) {
-        z = ((Point3D) points.elementAt(i)).z;
-      }
-    }
-
-    return new Point3D(x, y, z);
+    return mesh.maximums();
   }
 
   /**
@@ -167,23 +650,7 @@ public class Polyhedron {
    * encoded in a Point3D object
    */
   public Point3D minimums() {
-    double x = ((Point3D) points.elementAt(0)).x;
-    double y = ((Point3D) points.elementAt(0)).y;
-    double z = ((Point3D) points.elementAt(0)).z;
-
-    for (int i = 0; i < points.size(); i++) {
-      if (((Point3D) points.elementAt(i)).x < x) {
-        x = ((Point3D) points.elementAt(i)).x;
-      }
-      if (((Point3D) points.elementAt(i)).y < y) {
-        y = ((Point3D) points.elementAt(i)).y;
-      }
-      if (((Point3D) points.elementAt(i)).z < z) {
-        z = ((Point3D) points.elementAt(i)).z;
-      }
-    }
-
-    return new Point3D(x, y, z);
+    return mesh.minimums();
   }
 
   /**
@@ -196,17 +663,61 @@ public class Polyhedron {
     return new Point3D(max.x - min.x, max.y - min.y, max.z - min.z);
   }
 
+  /**
+   * If set to true, draw() sorts the faces from back to front and draws
+   * them all, rather than drawing the ones facing us in the order they
+   * were added.  This is slower, but shows models whose faces aren't all
+   * listed in the same direction.
+   */
+  public void setDepthSorted(boolean depthSorted) {
+    if (! depthSorted) {
+      depthSorter = null;
+    }
+    else if (depthSorter == null) {
+      depthSorter = new DepthSorter();
+    }
+  }
+
+  /**
+   * @return roughly how many bytes of heap this Polyhedron takes once it
+   * has been drawn every way, for deciding how many to keep around.  What
+   * drawing makes as it is needed, the view and screen coordinates, the
+   * shades, the edges, the depth sorter and the wireframe path, is
+   * counted whether or not it has been made yet, so the estimate doesn't
+   * grow as the model is drawn.
+   */
+  public long estimateBytes() {
+    int vertexCount = mesh.vertexCount;
+    int faceCount = mesh.faceCount;
+    long bytes = mesh.estimateBytes() + (long) VERTEX_OBJECT_BYTES * vertexCount;
+
+    // viewX, viewY and viewZ, and screenX and screenY
+    bytes += (8L * 3 + 4L * 2) * vertexCount;
+
+    // faceShades, and the order, keys and scratch arrays of the depth
+    // sorter
+    bytes += (1L + 4L * 3) * faceCount;
+
+    bytes += (long) PATH_EDGE_BYTES * mesh.estimateEdgeCount();
+    return bytes;
+  }
+
+  public boolean isDepthSorted() {
+    return depthSorter != null;
+  }
+
+  public boolean isFilled() {
+    return filled;
+  }
+
   public void setFilled(boolean filled) {
     this.filled = filled;
-    for (int i = 0; i < faces.size(); i++) {
-      ((Polygon) faces.elementAt(i)).setFilled(filled);
-    }
   }
 
   public String toString() {
     String string = "Polyhedron:\n";
-    for (int i = 0; i < faces.size(); i++) {
-      string += faces.elementAt(i).toString() + "\n";
+    for (int i = 0; i < mesh.faceCount; i++) {
+      string += getFace(i).toString() + "\n";
     }
     return string;
   }
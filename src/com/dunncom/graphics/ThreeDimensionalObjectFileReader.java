@@ -1,13 +1,19 @@
 package com.dunncom.graphics;
 
-import java.io.FileReader;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Vector;
-import java.util.StringTokenizer;
 
 /**
  * For Parsing 3D object files.  Generates Polyhedron instances from them.
+ * The files are read with a ByteScanner, which parses the numbers
+ * straight from the bytes of the file, so reading a line makes no new
+ * objects.
+ * <P>
+ * Formats whose vertex and face lines can be picked out without parsing
+ * them, by overriding findSections(), can also be read with
+ * parseParallel(), which parses pieces of the file on several threads.
  *
  * @author Thomas Dunn
  */
@@ -15,19 +21,54 @@ import java.util.StringTokenizer;
 public class ThreeDimensionalObjectFileReader {
 
   /**
-   * Reader object for reading the file
+   * Told how far a parse has got, every PROGRESS_LINES lines
    */
-  protected BufferedReader fileReader;
+  public interface ProgressListener {
+    /**
+     * @param vertices number of vertices read so far
+     * @param faces number of faces read so far
+     */
+    void parsed(int vertices, int faces);
+  }
+
+  /**
+   * How many lines are read between calls to the progress listener
+   */
+  static final int PROGRESS_LINES = 1000;
+
+  /**
+   * Scanner for reading the file
+   */
+  protected ByteScanner scanner;
+
+  /**
+   * Coordinates of the vertices read from the file
+   */
+  protected double vertexX[] = new double[16];
+  protected double vertexY[] = new double[16];
+  protected double vertexZ[] = new double[16];
+
+  /**
+   * Number of vertices read from the file
+   */
+  protected int vertexCount;
+
+  /**
+   * The number the file gives the first vertex.  Most of the formats
+   * start numbering at 1.
+   */
+  protected int firstVertexNumber = 1;
 
   /**
-   * Vector of the vertices of the polyhedron
+   * Index in the polyhedron of each vertex read, or -1 if no face has
+   * used the vertex yet
    */
-  protected Vector vertices;
+  protected int vertexIndices[];
 
   /**
-   * To split the tokens on lines, delimited by whitespace
+   * Indices of the face being read, reused from face to face
    */
-  protected StringTokenizer st;
+  protected int faceIndices[] = new int[16];
 
   /**
    * The Polyhedron we are building and will return to user
@@ -35,41 +76,246 @@ public class ThreeDimensionalObjectFileReader {
   protected Polyhedron polyhedron;
 
   /**
-   * Create a 3D object reader, based on a 3D object filename
+   * Told how far parsing has got, or null
+   */
+  protected ProgressListener progressListener;
+
+  /**
+   * Number of lines read by parse() so far
+   */
+  protected int linesRead;
+
+  /**
+   * Set by cancel(), from any thread, to make parse() stop early
+   */
+  private volatile boolean cancelled;
+
+  /**
+   * How many of the vertices read are counted in the smallest and largest
+   * coordinates and the totals below, for vertexRange() and
+   * vertexAveragePoint()
+   */
+  private int summarizedVertices;
+  private double minX, minY, minZ;
+  private double maxX, maxY, maxZ;
+  private double totalX, totalY, totalZ;
+
+  /**
+   * Only set on a reader parsing one chunk of a file for parseParallel():
+   * the faces of the chunk, with the vertex numbers as they are in the file
+   */
+  protected Mesh chunkFaces;
+
+  /**
+   * Only set on a reader parsing one chunk of a file for parseParallel():
+   * where the chunk starts in the file, and what stopped it being parsed,
+   * if anything, on the line starting at chunkFailedLine
+   */
+  int chunkStart;
+  RuntimeException chunkException;
+  int chunkFailedLine;
+
+  /**
+   * Create a 3D object reader with no file yet, for parsing one chunk of
+   * a file for parseParallel()
+   */
+  protected ThreeDimensionalObjectFileReader() {
+  }
+
+  /**
+   * Create a 3D object reader for the text of a 3D object file
    */
   public ThreeDimensionalObjectFileReader(BufferedReader file) {
-    vertices = new Vector();
+    scanner = new ByteScanner(file);
+  }
 
-    // we dont want a vertex in the first spot because the object
-    // files start numbering at 1
-    vertices.addElement(null);
+  /**
+   * Create a 3D object reader for the bytes of a 3D object file
+   */
+  public ThreeDimensionalObjectFileReader(InputStream in) {
+    scanner = new ByteScanner(in);
+  }
 
-    fileReader = file;
+  /**
+   * Creates the right reader for an object file, based on its extension
+   * @param filename name of the object file
+   * @param file reader for the contents of the object file
+   * @return the reader, or null if the file format is not recognized
+   */
+  public static ThreeDimensionalObjectFileReader createReader(String filename, BufferedReader file) {
+    String extension = filename.substring(filename.indexOf("."));
+    if (extension.equals(".nff")) {
+      return new NFFReader(file);
+    }
+    else if (extension.equals(".nfz")) {
+      return new NFZReader(file);
+    }
+    else if (extension.equals(".off")) {
+      return new OFFReader(file);
+    }
+    else if (extension.equals(".obj")) {
+      return new OBJReader(file);
+    }
+    else if (extension.equals(".ofo")) {
+      return new OFOReader(file);
+    }
+    return null;
+  }
+
+  /**
+   * Creates the right reader for an object file, based on its extension
+   * @param filename name of the object file
+   * @param in the bytes of the object file
+   * @return the reader, or null if the file format is not recognized
+   */
+  public static ThreeDimensionalObjectFileReader createReader(String filename, InputStream in) {
+    String extension = filename.substring(filename.indexOf("."));
+    if (extension.equals(".nff")) {
+      return new NFFReader(in);
+    }
+    else if (extension.equals(".nfz")) {
+      return new NFZReader(in);
+    }
+    else if (extension.equals(".off")) {
+      return new OFFReader(in);
+    }
+    else if (extension.equals(".obj")) {
+      return new OBJReader(in);
+    }
+    else if (extension.equals(".ofo")) {
+      return new OFOReader(in);
+    }
+    return null;
+  }
+
+  public void setProgressListener(ProgressListener progressListener) {
+    this.progressListener = progressListener;
   }
 
-  public ThreeDimensionalObjectFileReader() {}
+  /**
+   * Makes parse() stop at the next line it reads.  Can be called from any
+   * thread.
+   */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  /**
+   * @return whether cancel() has been called, in which case the Polyhedron
+   * from parse() is only part of the object
+   */
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * @return a Polyhedron of the faces read so far, and the vertices they
+   * use, that parsing then leaves alone, or null if no faces have been
+   * read yet.  Only call on the thread doing the parsing, such as from
+   * the progress listener.
+   */
+  public Polyhedron getPartialPolyhedron() {
+    if (polyhedron == null || polyhedron.getFaceCount() == 0) {
+      return null;
+    }
+    return new Polyhedron(polyhedron.mesh.copy());
+  }
+
+  /**
+   * @return the range for x, y, and z values of all the vertices read so
+   * far, whether or not a face uses them yet, or null if none have been
+   * read.  Since the vertices come before the faces, this is a good guess
+   * at the size of the whole object while it is being read.  Only call on
+   * the thread doing the parsing.
+   */
+  public Point3D vertexRange() {
+    if (! summarizeVertices()) {
+      return null;
+    }
+    return new Point3D(maxX - minX, maxY - minY, maxZ - minZ);
+  }
+
+  /**
+   * @return the average point of all the vertices read so far, or null if
+   * none have been read.  Only call on the thread doing the parsing.
+   */
+  public Point3D vertexAveragePoint() {
+    if (! summarizeVertices()) {
+      return null;
+    }
+    int n = summarizedVertices;
+    return new Point3D(totalX / n, totalY / n, totalZ / n);
+  }
+
+  /**
+   * Adds the vertices read since last time to the smallest and largest
+   * coordinates and the totals
+   * @return false if no vertices have been read
+   */
+  private boolean summarizeVertices() {
+    if (vertexCount == 0) {
+      return false;
+    }
+    if (summarizedVertices == 0) {
+      minX = maxX = vertexX[0];
+      minY = maxY = vertexY[0];
+      minZ = maxZ = vertexZ[0];
+    }
+    for (int i = summarizedVertices; i < vertexCount; i++) {
+      double x = vertexX[i];
+      double y = vertexY[i];
+      double z = vertexZ[i];
+      minX = Math.min(minX, x);
+      minY = Math.min(minY, y);
+      minZ = Math.min(minZ, z);
+      maxX = Math.max(maxX, x);
+      maxY = Math.max(maxY, y);
+      maxZ = Math.max(maxZ, z);
+      totalX += x;
+      totalY += y;
+      totalZ += z;
+    }
+    summarizedVertices = vertexCount;
+    return true;
+  }
+
+  /**
+   * Called by parse() before reading each line.  Every PROGRESS_LINES lines
+   * it tells the progress listener how far parsing has got.
+   * @return false if parsing has been cancelled and should stop
+   */
+  protected boolean keepReading() {
+    linesRead++;
+    if (progressListener != null && linesRead % PROGRESS_LINES == 0) {
+      progressListener.parsed(vertexCount, polyhedron.getFaceCount());
+    }
+    return ! cancelled;
+  }
 
   /**
    * Parses the file contents and returns the Polyhedron represented by the file
    */
   public Polyhedron parse() {
     polyhedron = new Polyhedron();
-    String line = null;
 
     try {
 
       // parse vertices
-      line = findVertices();
-      parseVertexLine(line);
-      while((line = fileReader.readLine()) != null) {
-        parseVertexLine(line);
+      findVertices();
+      parseVertexLine();
+      while(keepReading() && scanner.nextLine()) {
+        parseVertexLine();
+      }
+
+      if (isCancelled()) {
+        return polyhedron;
       }
 
       // parse faces
-      line = findFaces();
-      parseFaceLine(line);
-      while((line = fileReader.readLine()) != null) {
-        parseFaceLine(line);
+      findFaces();
+      parseFaceLine();
+      while(keepReading() && scanner.nextLine()) {
+        parseFaceLine();
       }
     }
     catch (IOException ioe) {
@@ -82,30 +328,222 @@ public class ThreeDimensionalObjectFileReader {
   }
 
   /**
-   * Pass through text at beginning of file, possibly parsing, possibly skipping
-   * until vertices are encountered
-   *
-   * @return the first line representing a vertex
+   * Parses the file contents and returns the Polyhedron represented by the
+   * file, exactly as parse() does, but parses the vertex lines and then
+   * the face lines in chunks, one per ParallelTransform thread, on the
+   * workers ParallelTransform keeps for parsing, so frames being drawn
+   * meanwhile aren't held up.  The whole file is read into memory first.  The chunks are split on line
+   * boundaries, and each one is parsed by a reader of its own with the
+   * same parseVertexLine() and parseFaceLine() as this one.  The vertices
+   * of the chunks are then put one after another, and the faces added in
+   * file order, so vertices get the same polyhedron indices as in parse().
+   * <P>
+   * Formats that don't override findSections(), files findSections()
+   * can't make out, and any file when ParallelTransform only uses one
+   * thread, are just read with parse().
    */
-  public String findVertices() {
-    String line = null;
+  public Polyhedron parseParallel() {
+    if (ParallelTransform.getThreadCount() < 2) {
+      return parse();
+    }
 
+    int sections[];
     try {
-      while((line = fileReader.readLine()) != null) {
-        line = line.trim();
+      scanner.readAll();
+      sections = findSections();
+    }
+    catch (IOException ioe) {
+      System.out.println("Caught IOException in ThreeDimensionalObjectFileReader in parseParallel()");
+      System.out.println(ioe);
+      ioe.printStackTrace();
+      return parse();
+    }
+    if (sections == null) {
+      scanner.rewind();
+      return parse();
+    }
+
+    polyhedron = new Polyhedron();
+
+    // parse vertices
+    ThreeDimensionalObjectFileReader chunks[] = parseChunks(sections[0], sections[1], false);
+    int total = vertexCount;
+    for (int i = 0; i < chunks.length; i++) {
+      total += chunks[i].vertexCount;
+    }
+    vertexX = new double[Math.max(total, 16)];
+    vertexY = new double[vertexX.length];
+    vertexZ = new double[vertexX.length];
+    for (int i = 0; i < chunks.length; i++) {
+      ThreeDimensionalObjectFileReader chunk = chunks[i];
+      System.arraycopy(chunk.vertexX, 0, vertexX, vertexCount, chunk.vertexCount);
+      System.arraycopy(chunk.vertexY, 0, vertexY, vertexCount, chunk.vertexCount);
+      System.arraycopy(chunk.vertexZ, 0, vertexZ, vertexCount, chunk.vertexCount);
+      vertexCount += chunk.vertexCount;
+      if (chunk.chunkException != null) {
+        failChunk(chunk, false);
+      }
+    }
+
+    if (isCancelled()) {
+      return polyhedron;
+    }
+    if (progressListener != null) {
+      progressListener.parsed(vertexCount, 0);
+    }
 
-        // skip the line if it is blank
-        if (line.length() == 0) {
-          continue;
+    // parse faces, then add them in order, just as parse() would have
+    chunks = parseChunks(sections[2], sections[3], true);
+    for (int i = 0; i < chunks.length; i++) {
+      Mesh faces = chunks[i].chunkFaces;
+      for (int f = 0; f < faces.faceCount; f++) {
+        int start = faces.faceStart[f];
+        int count = faces.faceStart[f + 1] - start;
+        if (count > faceIndices.length) {
+          faceIndices = new int[count];
         }
-        // skip the line if it is a comment line
-        else if (line.length() >= 2 &&
-                 line.charAt(0) == '/' &&
-                 line.charAt(1) == '/') {
-          continue;
+        for (int j = 0; j < count; j++) {
+          faceIndices[j] = polyhedronVertex(faces.faceVertices[start + j]);
         }
-        else {
-          break;
+        polyhedron.addFace(faceIndices, count);
+      }
+      if (chunks[i].chunkException != null) {
+        failChunk(chunks[i], true);
+      }
+    }
+
+    if (progressListener != null) {
+      progressListener.parsed(vertexCount, polyhedron.getFaceCount());
+    }
+    return polyhedron;
+  }
+
+  /**
+   * Called by parseParallel() once the whole file is in the scanner's
+   * buffer, to find where the vertex lines and the face lines are
+   * @return the offsets in the buffer where the vertex lines start and
+   * end, then where the face lines start and end, or null if this format
+   * can't be parsed in chunks or the file isn't laid out as expected.
+   * Every line between the start and end offsets must be a vertex line,
+   * or a face line, to be parsed by parseVertexLine() or parseFaceLine().
+   */
+  protected int[] findSections() throws IOException {
+    return null;
+  }
+
+  /**
+   * Makes a reader to parse one chunk of a file for parseParallel()
+   */
+  protected ThreeDimensionalObjectFileReader createChunkReader() {
+    return null;
+  }
+
+  /**
+   * Parses the lines from start to end in the scanner's buffer, split into
+   * chunks on line boundaries that are parsed at the same time
+   * @param faces true for face lines, false for vertex lines
+   * @return the readers that parsed the chunks, in file order
+   */
+  private ThreeDimensionalObjectFileReader[] parseChunks(final int start, final int end, final boolean faces) {
+    final byte bytes[] = scanner.getBuffer();
+    final Vector chunks = new Vector();
+    ParallelTransform.runParse(end - start, new ParallelTransform.RangeTask() {
+      public void run(int from, int to) {
+        ThreeDimensionalObjectFileReader chunk = createChunkReader();
+        chunk.chunkStart = lineBoundary(bytes, start + from, start, end);
+        chunk.scanner = new ByteScanner(bytes, chunk.chunkStart, lineBoundary(bytes, start + to, start, end));
+        if (faces) {
+          chunk.chunkFaces = new Mesh();
+        }
+
+        try {
+          while (! isCancelled() && chunk.scanner.nextLine()) {
+            if (faces) {
+              chunk.parseFaceLine();
+            }
+            else {
+              chunk.parseVertexLine();
+            }
+          }
+        }
+        catch (IOException ioe) {
+          // can't happen, the scanner only has the array to read
+          System.out.println("Caught IOException in ThreeDimensionalObjectFileReader in parseChunks()");
+          System.out.println(ioe);
+          ioe.printStackTrace();
+        }
+        catch (RuntimeException re) {
+          chunk.chunkException = re;
+          chunk.chunkFailedLine = chunk.scanner.getLineStart();
+        }
+        chunks.addElement(chunk);
+      }
+    });
+
+    ThreeDimensionalObjectFileReader ordered[] = new ThreeDimensionalObjectFileReader[chunks.size()];
+    for (int i = 0; i < ordered.length; i++) {
+      ThreeDimensionalObjectFileReader chunk = (ThreeDimensionalObjectFileReader) chunks.elementAt(i);
+      int j = i;
+      while (j > 0 && ordered[j - 1].chunkStart > chunk.chunkStart) {
+        ordered[j] = ordered[j - 1];
+        j--;
+      }
+      ordered[j] = chunk;
+    }
+    return ordered;
+  }
+
+  /**
+   * Parses the line a chunk stopped on again with this reader, once the
+   * chunks before it have been used, so it throws just what parse() would
+   * have on that line.  A face line can fail differently here, where its
+   * vertex numbers are checked as they are read.
+   */
+  private void failChunk(ThreeDimensionalObjectFileReader chunk, boolean faces) {
+    scanner = new ByteScanner(scanner.getBuffer(), chunk.chunkFailedLine, scanner.getLength());
+    try {
+      scanner.nextLine();
+    }
+    catch (IOException ioe) {
+      // can't happen, the scanner only has the array to read
+    }
+    if (faces) {
+      parseFaceLine();
+    }
+    else {
+      parseVertexLine();
+    }
+    throw chunk.chunkException;
+  }
+
+  /**
+   * @return the start of the first line starting at or after offset,
+   * keeping between start and end.  Lines are only split after a '\n', so
+   * "\r\n" is never split.
+   */
+  private static int lineBoundary(byte bytes[], int offset, int start, int end) {
+    if (offset <= start) {
+      return start;
+    }
+    while (offset < end && bytes[offset - 1] != '\n') {
+      offset++;
+    }
+    return Math.min(offset, end);
+  }
+
+  /**
+   * Pass through text at beginning of file, possibly parsing, possibly skipping
+   * until vertices are encountered
+   *
+   * @return false if the end of the file was reached first, otherwise the
+   * scanner is on the first line representing a vertex
+   */
+  public boolean findVertices() {
+    try {
+      while (scanner.nextLine()) {
+        // skip the line if it is blank or a comment line
+        if (! scanner.isBlankLine() && ! scanner.isCommentLine()) {
+          return true;
         }
       }
     }
@@ -114,81 +552,117 @@ public class ThreeDimensionalObjectFileReader {
       System.out.println(ioe);
       ioe.printStackTrace();
     }
-    return line;
+    return false;
   }
 
   /**
    * Pass through text in between vertices and faces, possibly parsing, possibly skipping
    * until faces are encountered
    *
-   * @return the first line representing a face
+   * @return false if the end of the file was reached first, otherwise the
+   * scanner is on the first line representing a face
    */
-  public String findFaces() {
-    String line = null;
-
+  public boolean findFaces() {
     try {
-      while((line = fileReader.readLine()) != null) {
-        line = line.trim();
-
-        // skip the line if it is blank
-        if (line.length() == 0) {
-          continue;
-        }
-        // skip the line if it is a comment line
-        else if (line.length() >= 2 &&
-                 line.charAt(0) == '/' &&
-                 line.charAt(1) == '/') {
-          continue;
-        }
-        else {
-          break;
+      while (scanner.nextLine()) {
+        // skip the line if it is blank or a comment line
+        if (! scanner.isBlankLine() && ! scanner.isCommentLine()) {
+          return true;
         }
       }
     }
     catch (IOException ioe) {
-      System.out.println("Caught IOException in ThreeDimensionalObjectFileReader in findVertices()");
+      System.out.println("Caught IOException in ThreeDimensionalObjectFileReader in findFaces()");
       System.out.println(ioe);
       ioe.printStackTrace();
     }
-    return line;
+    return false;
   }
 
   /**
-   * Parses a line, interpreting it as a face
+   * Parses the scanner's line, interpreting it as a face
    */
-  public void parseFaceLine(String line) {
-    Vector pointsVector = new Vector();
-    String token = "";
+  public void parseFaceLine() {
+    parseFaceIndices();
+  }
 
-    st = new StringTokenizer(line);
-    while (st.hasMoreTokens()) {
-      token = st.nextToken();
-      pointsVector.addElement(token);
+  /**
+   * Adds a face made of the vertex numbers in the rest of the scanner's line
+   */
+  protected void parseFaceIndices() {
+    int count = 0;
+    while (scanner.hasMoreTokens()) {
+      if (count == faceIndices.length) {
+        int newIndices[] = new int[count * 2];
+        System.arraycopy(faceIndices, 0, newIndices, 0, count);
+        faceIndices = newIndices;
+      }
+      int vertexNumber = scanner.nextInt();
+      faceIndices[count++] = chunkFaces == null ? polyhedronVertex(vertexNumber) : vertexNumber;
     }
 
-    Point3D points[] = new Point3D[pointsVector.size()];
-    for (int i = 0; i < pointsVector.size(); i++) {
-      points[i] = (Point3D) vertices.elementAt(Integer.parseInt((String) pointsVector.elementAt(i)));
+    if (chunkFaces == null) {
+      polyhedron.addFace(faceIndices, count);
     }
+    else {
+      chunkFaces.addFace(faceIndices, count);
+    }
+  }
 
-    Polygon face = new Polygon(points);
-    polyhedron.addFace(face);
+  /**
+   * Adds a vertex to the polyhedron the first time a face uses it, so that
+   * vertices no face uses are left out
+   * @param vertexNumber the number of the vertex in the file
+   * @return the index of the vertex in the polyhedron
+   */
+  protected int polyhedronVertex(int vertexNumber) {
+    if (vertexIndices == null || vertexIndices.length < vertexCount) {
+      int oldLength = 0;
+      int newIndices[] = new int[vertexCount];
+      if (vertexIndices != null) {
+        oldLength = vertexIndices.length;
+        System.arraycopy(vertexIndices, 0, newIndices, 0, oldLength);
+      }
+      for (int i = oldLength; i < newIndices.length; i++) {
+        newIndices[i] = -1;
+      }
+      vertexIndices = newIndices;
+    }
+
+    int vertex = vertexNumber - firstVertexNumber;
+    int index = vertexIndices[vertex];
+    if (index == -1) {
+      index = polyhedron.addVertex(vertexX[vertex], vertexY[vertex], vertexZ[vertex]);
+      vertexIndices[vertex] = index;
+    }
+    return index;
   }
 
   /**
-   * Parses a line, interpreting it as a vertex
+   * Parses the scanner's line, interpreting it as a vertex
    */
-  public void parseVertexLine(String line) {
-    double x = 0.0;
-    double y = 0.0;
-    double z = 0.0;
+  public void parseVertexLine() {
+    addVertex(scanner.nextDouble(), scanner.nextDouble(), scanner.nextDouble());
+  }
 
-    st = new StringTokenizer(line);
-    x = new Double(st.nextToken()).doubleValue();
-    y = new Double(st.nextToken()).doubleValue();
-    z = new Double(st.nextToken()).doubleValue();
+  /**
+   * Keeps a vertex read from the file
+   */
+  protected void addVertex(double x, double y, double z) {
+    if (vertexCount == vertexX.length) {
+      vertexX = grow(vertexX);
+      vertexY = grow(vertexY);
+      vertexZ = grow(vertexZ);
+    }
+    vertexX[vertexCount] = x;
+    vertexY[vertexCount] = y;
+    vertexZ[vertexCount] = z;
+    vertexCount++;
+  }
 
-    Point3D vertex = new Point3D(x, y, z);
-    vertices.addElement(vertex);
+  private static double[] grow(double array[]) {
+    double newArray[] = new double[array.length * 2];
+    System.arraycopy(array, 0, newArray, 0, array.length);
+    return newArray;
   }
 }
\ No newline at end of file
@@ -15,27 +15,91 @@ import java.util.*;
  *
  * @author Thomas Dunn
  */
-public class ThreeDimensionalObjectsApplet extends Applet implements Runnable, ItemListener, MouseMotionListener {
+public class ThreeDimensionalObjectsApplet extends Applet
+  implements FrameScheduler.Animation, ModelLoader.Listener, ItemListener,
+             MouseMotionListener {
 
   /**
-   * Thread for continuously repainting after a delay
+   * Runs the auto-rotation and asks for the frames to be painted
    */
-  Thread paintThread;
+  FrameScheduler scheduler;
 
   /**
-   * Rotation matrix for when object is rotating
+   * Rotation matrix for when object is rotating, rebuilt for the time
+   * passed each frame
    */
-  Matrix3D rotateAroundPoint;
+  Matrix3D autoRotation = new Matrix3D();
 
   /**
-   * The object
+   * What the object auto-rotates around
    */
-  Polyhedron polyhedron;
+  Point3D rotationCenter = new Point3D(0.0, 0.0, 0.0);
 
   /**
-   * The "center" of the object
+   * Auto-rotation speeds, in radians per second, around the x, y, and z
+   * axes
    */
-  Point3D center;
+  static final double ROTATION_SPEED_X = 0.6;
+  static final double ROTATION_SPEED_Y = 0.3;
+  static final double ROTATION_SPEED_Z = 0.1;
+
+  /**
+   * Reads models in the background
+   */
+  ModelLoader modelLoader;
+
+  /**
+   * Models already seen, so going back to one is quick
+   */
+  ModelCache modelCache = new ModelCache(MODEL_CACHE_BYTES);
+
+  /**
+   * Most bytes of models to keep in the model cache
+   */
+  static final long MODEL_CACHE_BYTES = 32 * 1024 * 1024;
+
+  /**
+   * Loads the models in the manifest into the model cache while the user
+   * looks at the current one, or null if prefetching is turned off
+   */
+  ModelPrefetcher prefetcher;
+
+  /**
+   * Most models to prefetch at once, unless the prefetchThreads parameter
+   * says otherwise.  0 turns prefetching off.
+   */
+  static final int PREFETCH_THREADS = 1;
+
+  /**
+   * Bytes of models in the model cache at which prefetching stops, unless
+   * the prefetchKB parameter says otherwise.  Kept below
+   * MODEL_CACHE_BYTES, so prefetching alone doesn't push models out of
+   * the cache.
+   */
+  static final long PREFETCH_BYTES = 24 * 1024 * 1024;
+
+  /**
+   * What to draw, and how.  Rotating the object or changing how it is
+   * drawn puts a new ViewState here; the object itself isn't changed.
+   */
+  volatile ViewState viewState = ViewState.createEmptyViewState();
+
+  /**
+   * Held while making a new ViewState from the current one, so two
+   * changes at once don't lose one of them.  paint() never needs it.
+   */
+  Object viewStateLock = new Object();
+
+  /**
+   * The model being shown while it is still loading, or null.  Guarded by
+   * viewStateLock.
+   */
+  String partialModelFilename;
+
+  /**
+   * The whole transform from the object to the screen, rebuilt each paint
+   */
+  Matrix3D view = new Matrix3D();
 
   /**
    * For reading object files
@@ -53,14 +117,20 @@ public class ThreeDimensionalObjectsApplet extends Applet implements Runnable, I
   Graphics offScreenGraphics;
 
   /**
-   * Checkbox component for whether object is filled or not
+   * Draws the object into its own image with a depth buffer, when chosen
+   * instead of drawing it polygon by polygon
    */
-  Checkbox filledCheckbox;
+  ZBufferRenderer zBuffer;
+
+  /**
+   * Graphics for writing the credits on top of the depth buffered image
+   */
+  Graphics zBufferGraphics;
 
   /**
-   * For whether object is filled or not
+   * Checkbox component for whether object is filled or not
    */
-  boolean filled = true;
+  Checkbox filledCheckbox;
 
   /**
    * Checkbox component for whether object is rotating or not
@@ -70,7 +140,7 @@ public class ThreeDimensionalObjectsApplet extends Applet implements Runnable, I
   /**
    * For whether object is rotating or not
    */
-  boolean rotate = true;
+  volatile boolean rotate = true;
 
   /**
    * List of models
@@ -78,19 +148,55 @@ public class ThreeDimensionalObjectsApplet extends Applet implements Runnable, I
   Choice modelList = new Choice();
 
   /**
-   * Delay in milliseconds between object repaints
+   * List of ways to draw the object
    */
-  final int DELAY = 50;
+  Choice drawingList = new Choice();
 
   /**
-   * If a certain model can be filled or not
+   * drawingList choice for drawing the object polygon by polygon
    */
-  Hashtable canFill = new Hashtable();
+  static final String DRAW_POLYGONS = "Polygons";
+
+  /**
+   * drawingList choice for drawing the object polygon by polygon, from
+   * back to front
+   */
+  static final String DRAW_SORTED = "Sorted Polygons";
+
+  /**
+   * drawingList choice for drawing the object with a depth buffer
+   */
+  static final String DRAW_ZBUFFER = "Z-Buffer";
+
+  /**
+   * Frames per second to aim for, unless the frameRate parameter says
+   * otherwise
+   */
+  static final int FRAME_RATE = 20;
+
+  /**
+   * whether to show the frame rate and frame times, set by the
+   * showFrameRate parameter
+   */
+  boolean showFrameRate = false;
+
+  /**
+   * Times the stages of each frame, for showing and through JMX, or null
+   * if neither the showFrameTiming nor the frameTimingJMX parameter is
+   * set, so frames aren't timed when nobody is looking
+   */
+  FrameTiming frameTiming;
+
+  /**
+   * whether to show the frame timing, set by the showFrameTiming
+   * parameter
+   */
+  boolean showFrameTiming = false;
 
   /**
-   * whether we are painting or not
+   * If a certain model can be filled or not
    */
-  boolean painting = false;
+  Hashtable canFill = new Hashtable();
 
   // for mouse dragging rotation of object
   Matrix3D yRotatePos;
@@ -106,6 +212,9 @@ public class ThreeDimensionalObjectsApplet extends Applet implements Runnable, I
   public void init() {
 
     try {
+      modelLoader = new ModelLoader(new URL(this.getCodeBase(), "models/"), this);
+      modelLoader.setCache(modelCache);
+
       this.showStatus("Reading object manifest file...");
       URL manifestURL = new URL(this.getCodeBase() + "models/manifest");
       URLConnection manifestConnection = manifestURL.openConnection();
@@ -124,14 +233,39 @@ public class ThreeDimensionalObjectsApplet extends Applet implements Runnable, I
       ioe.printStackTrace();
     }
 
+    int frameRate = FRAME_RATE;
+    try {
+      if (getParameter("frameRate") != null) {
+        frameRate = Integer.parseInt(getParameter("frameRate"));
+      }
+    }
+    catch (NumberFormatException nfe) {
+      System.out.println("Caught NumberFormatException in ThreeDimensionalObjectsApplet, init()");
+      System.out.println(nfe);
+    }
+    scheduler = new FrameScheduler(this, frameRate);
+    showFrameRate = "true".equals(getParameter("showFrameRate"));
+    showFrameTiming = "true".equals(getParameter("showFrameTiming"));
+    boolean frameTimingJMX = "true".equals(getParameter("frameTimingJMX"));
+    if (showFrameTiming || frameTimingJMX) {
+      frameTiming = new FrameTiming();
+      if (frameTimingJMX) {
+        frameTiming.register();
+      }
+    }
+    createPrefetcher();
+
     setLayout(new BorderLayout());
     setBackground(new Color(240, 240, 240));
 
-    offScreenImage = createImage(this.size().width,this.size().height);
+    offScreenImage = createImage(this.getSize().width,this.getSize().height);
     offScreenGraphics = offScreenImage.getGraphics();
 
+    zBuffer = new ZBufferRenderer(this.getSize().width, this.getSize().height);
+    zBufferGraphics = zBuffer.getImage().getGraphics();
+
     Panel controlPanel = new Panel();
-    filledCheckbox = new Checkbox("Fill Object? ", filled);
+    filledCheckbox = new Checkbox("Fill Object? ", viewState.filled);
     filledCheckbox.addItemListener(this);
 
     rotateCheckbox = new Checkbox("Rotate Object? ", rotate);
@@ -139,149 +273,261 @@ public class ThreeDimensionalObjectsApplet extends Applet implements Runnable, I
 
     // for mouse dragging rotation
     double rotationAmount = 0.08;
-    center = new Point3D(this.size().width / 2.0,
-                         this.size().height / 2.0,
-                         this.size().width / 2.0);
-    yRotatePos = Matrix3D.createRotateAroundPointMatrix(center, 0.0, rotationAmount, 0.0);
-    xRotatePos = Matrix3D.createRotateAroundPointMatrix(center, rotationAmount, 0.0, 0.0);
-    yRotateNeg = Matrix3D.createRotateAroundPointMatrix(center, 0.0, -rotationAmount, 0.0);
-    xRotateNeg = Matrix3D.createRotateAroundPointMatrix(center, -rotationAmount, 0.0, 0.0);
-    lastX = this.size().width / 2;
-    lastY = this.size().height / 2;
+    yRotatePos = Matrix3D.createYRotationMatrix(rotationAmount);
+    xRotatePos = Matrix3D.createXRotationMatrix(rotationAmount);
+    yRotateNeg = Matrix3D.createYRotationMatrix(-rotationAmount);
+    xRotateNeg = Matrix3D.createXRotationMatrix(-rotationAmount);
+
+    lastX = this.getSize().width / 2;
+    lastY = this.getSize().height / 2;
     this.addMouseMotionListener(this);
 
     modelList.addItemListener(this);
 
+    drawingList.add(DRAW_POLYGONS);
+    drawingList.add(DRAW_SORTED);
+    drawingList.add(DRAW_ZBUFFER);
+    drawingList.addItemListener(this);
+
     controlPanel.add(filledCheckbox);
     controlPanel.add(rotateCheckbox);
     controlPanel.add(new Label("Select a model:"));
     controlPanel.add(modelList);
+    controlPanel.add(new Label("Drawing:"));
+    controlPanel.add(drawingList);
     this.add(BorderLayout.NORTH, controlPanel);
   }
 
+  /**
+   * Starts loading a model in the background.  The current object keeps
+   * being drawn until the new one is ready.
+   * @param modelFilename the model file, or null for the built in pyramid
+   */
   void generatePolyhedron(String modelFilename) {
-
     this.showStatus("Reading " + modelFilename + ".  This may take a while...");
-
-    // in case the paint thread is running, shut it down temporarily while
-    // the polyhedron is reconstructed
-    stop();
-    try {
-      Thread.sleep(DELAY * 2);
+    if (prefetcher != null) {
+      // the user is waiting for this one
+      prefetcher.pause();
+    }
+    synchronized (viewStateLock) {
+      partialModelFilename = null;
     }
-    catch (InterruptedException ie) {}
+    modelLoader.load(modelFilename);
+  }
 
-    if (modelFilename != null) {
-      try {
-        URL objectURL = new URL(this.getCodeBase() + "models/" + modelFilename);
-        URLConnection objectConnection = objectURL.openConnection();
-        fileReader = new BufferedReader(new InputStreamReader(objectConnection.getInputStream()));
-      }
-      catch (MalformedURLException murle) {
-        System.out.println("Caught MalformedURLException in ThreeDimensionalObjectsApplet, init()");
-        System.out.println(murle);
-        murle.printStackTrace();
-      }
-      catch (IOException ioe) {
-        System.out.println("Caught IOException in ThreeDimensionalObjectsApplet, init()");
-        System.out.println(ioe);
-        ioe.printStackTrace();
-      }
-      ThreeDimensionalObjectFileReader objectReader;
+  /**
+   * Shows how far the model being loaded has got
+   */
+  public void loadProgress(String modelFilename, long bytesRead, int vertices, int faces) {
+    this.showStatus("Reading " + modelFilename + ": " + (bytesRead / 1024) + " KB, " +
+                    vertices + " vertices, " + faces + " faces...");
+  }
 
-      // read the object file with the correct file format reader
-      String extension = modelFilename.substring(modelFilename.indexOf("."));
-      if (extension.equals(".nff")) {
-        objectReader = new NFFReader(fileReader);
-      }
-      else if (extension.equals(".nfz")) {
-        objectReader = new NFZReader(fileReader);
-      }
-      else if (extension.equals(".off")) {
-        objectReader = new OFFReader(fileReader);
-      }
-      else if (extension.equals(".obj")) {
-        objectReader = new OBJReader(fileReader);
-      }
-      else if (extension.equals(".ofo")) {
-        objectReader = new OFOReader(fileReader);
-      }
-      else {
-        showStatus("File format " + extension + " not recognized.");
-        return;
-      }
+  /**
+   * Shows the part of a model read so far, sized by all the vertices
+   * read so far, so something is on screen long before a big model has
+   * all been read
+   */
+  public void modelPartlyLoaded(String modelFilename, Polyhedron polyhedron,
+                                Point3D range, Point3D center) {
+    fitPolyhedron(polyhedron, modelFilename, range, center, true);
+  }
+
+  /**
+   * Shows a model once the loader has read it
+   */
+  public void modelLoaded(String modelFilename, Polyhedron polyhedron) {
+    this.showStatus("Done reading " + modelFilename + ".  Fitting object to view.");
+
+    fitPolyhedron(polyhedron, modelFilename);
 
-      polyhedron = objectReader.parse();
+    this.showStatus("Object construction complete.");
+    if (prefetcher != null) {
+      prefetcher.resume();
     }
-    else {
-      polyhedron = Polyhedron.createPyramid5Polyhedron();
+  }
+
+  public void loadFailed(String modelFilename, String reason) {
+    showStatus(reason);
+    if (prefetcher != null) {
+      prefetcher.resume();
     }
+  }
 
-    this.showStatus("Done reading " + modelFilename + ".  Scaling object.  This may take a while...");
+  /**
+   * Works out how to scale and move the object so it fills most of the
+   * applet, and shows it in place of the current one, turned the way it
+   * was loaded.  The object itself is not changed.
+   * @param modelFilename the file the object came from, for whether it
+   * can be filled, or null
+   */
+  void fitPolyhedron(Polyhedron polyhedron, String modelFilename) {
+    fitPolyhedron(polyhedron, modelFilename, polyhedron.range(), polyhedron.averagePoint(), false);
+  }
 
+  /**
+   * Shows an object scaled by a range and turning around a center, which
+   * while a model loads come from the vertices read so far.  More of the
+   * model being shown is left turned the way it is, and filled or not as
+   * it is.
+   * @param partial whether the model is still loading
+   */
+  void fitPolyhedron(Polyhedron polyhedron, String modelFilename,
+                     Point3D rangePoint, Point3D center, boolean partial) {
     // figure out how much to scale the polyhedron by
-    Point3D rangePoint = polyhedron.range();
     double range = 0.0;
     double scaleAmount = 1.0;
     range = Math.max(rangePoint.x, rangePoint.y);
     range = Math.max(rangePoint.z, range);
-    int width = ((Dimension)this.getSize()).width;
+    int width = this.getSize().width;
     scaleAmount = (width * 0.66) / range;
 
-    //System.out.println(polyhedron);
-
-    // scale the polyhedron
+    // turn around the "center" of the polyhedron, which ends up in the
+    // center of the viewing area
+    Matrix3D centered = Matrix3D.createTranslationMatrix(-center.x, -center.y, -center.z);
     Matrix3D scale = Matrix3D.createScalingMatrix(scaleAmount, scaleAmount, scaleAmount);
-    scale.transformPolyhedron(polyhedron);
-
-    this.showStatus("Done scaling.  Now centering object.  This may take a while...");
-
-    // move the polyhedron into the center of the viewing area
-    center = polyhedron.averagePoint();
-    Matrix3D translate = Matrix3D.createTranslationMatrix(-center.x + (width / 2.0), -center.y + (width / 2.0), -center.z + (width / 2.0));
-    translate.transformPolyhedron(polyhedron);
-
-    //System.out.println(polyhedron);
-
-    // create auto-rotation matrix
-    center = polyhedron.averagePoint();
-    rotateAroundPoint = Matrix3D.createRotateAroundPointMatrix(center,
-                                                       0.03,
-                                                       0.015,
-                                                       0.005);
-    if (modelFilename != null) {
-      if(! ((Boolean) canFill.get(modelFilename)).booleanValue()) {
-        filled = false;
+    Matrix3D translate = Matrix3D.createTranslationMatrix(width / 2.0, width / 2.0, width / 2.0);
+
+    Matrix3D fit = Matrix3D.mult(translate, scale);
+
+    boolean filled;
+    synchronized (viewStateLock) {
+      ViewState state = viewState;
+      filled = state.filled;
+      if (modelFilename != null && modelFilename.equals(partialModelFilename)) {
+        viewState = state.withGrownPolyhedron(polyhedron, centered, fit);
       }
       else {
-        filled = true;
+        if (modelFilename != null) {
+          // the depth buffer and sorting show every model correctly filled
+          filled = state.zBuffered || state.depthSorted ||
+                   ((Boolean) canFill.get(modelFilename)).booleanValue();
+        }
+        viewState = state.withPolyhedron(polyhedron, centered, fit, filled);
       }
-      filledCheckbox.setState(filled);
+      partialModelFilename = partial ? modelFilename : null;
     }
-    polyhedron.setFilled(filled);
 
-    // start the paintThread up painting again
-    startThread();
+    // this is called on the loader thread, and the checkbox is only to be
+    // changed on the event thread
+    final boolean checked = filled;
+    EventQueue.invokeLater(new Runnable() {
+      public void run() {
+        filledCheckbox.setState(checked);
+      }
+    });
+  }
 
-    this.showStatus("Object construction complete.");
+  /**
+   * Turns the object by a rotation, on top of how it is already turned
+   * @param rotation a rotation matrix
+   */
+  void rotateObject(Matrix3D rotation) {
+    synchronized (viewStateLock) {
+      viewState = viewState.withRotation(rotation);
+    }
   }
 
   /**
-   * Paints the object
+   * Paints the object as the latest ViewState says, and tells the
+   * scheduler how long it took
    */
   public void paint(Graphics g) {
+    long start = System.currentTimeMillis();
+    if (frameTiming != null) {
+      frameTiming.startFrame();
+    }
+
+    // everything drawn this frame comes from this one ViewState
+    ViewState state = viewState;
+    Polyhedron polyhedron = state.polyhedron;
+    if (polyhedron != null) {
+      polyhedron.setFilled(state.filled);
+      polyhedron.setDepthSorted(state.depthSorted);
+      polyhedron.setFrameTiming(frameTiming);
+      polyhedron.project(state.viewMatrix(view));
+
+      int faceCount = polyhedron.getFaceCount();
+      if (state.zBuffered) {
+        paintZBuffered(g, polyhedron);
+        if (frameTiming != null) {
+          frameTiming.endFrame(faceCount, 0);
+        }
+      }
+      else {
+        paintPolygons(g, polyhedron);
+        if (frameTiming != null) {
+          frameTiming.endFrame(polyhedron.getFacesDrawn(), faceCount - polyhedron.getFacesDrawn());
+        }
+      }
+    }
+    scheduler.frameDrawn(System.currentTimeMillis() - start);
+  }
+
+  /**
+   * Paints the object polygon by polygon into the offscreen image
+   */
+  void paintPolygons(Graphics g, Polyhedron polyhedron) {
     // clear background
     offScreenGraphics.setColor(this.getBackground());
-    offScreenGraphics.fillRect(0, 0, this.size().width, this.size().height);
+    offScreenGraphics.fillRect(0, 0, this.getSize().width, this.getSize().height);
 
     // draw the object
     polyhedron.draw(offScreenGraphics);
+    if (frameTiming != null) {
+      frameTiming.stageDone(FrameTiming.DRAW);
+    }
 
     // display credits
     showInfo(offScreenGraphics, "3D Objects Viewer Applet, Copyright (C) 2001 Thomas J. Dunn");
+    if (showFrameRate) {
+      showFrameRate(offScreenGraphics);
+    }
+    if (showFrameTiming) {
+      showFrameTiming(offScreenGraphics);
+    }
+    if (frameTiming != null) {
+      frameTiming.mark();
+    }
 
     // show it on the screen
     g.drawImage(offScreenImage, 0, 0, this);
+    if (frameTiming != null) {
+      frameTiming.stageDone(FrameTiming.BLIT);
+    }
+  }
+
+  /**
+   * Paints the object with the depth buffer, which has its own image, so
+   * nothing needs to go through the offscreen image
+   */
+  void paintZBuffered(Graphics g, Polyhedron polyhedron) {
+    zBuffer.clear(this.getBackground());
+
+    // draw the object
+    zBuffer.render(polyhedron);
+    if (frameTiming != null) {
+      frameTiming.stageDone(FrameTiming.DRAW);
+    }
+
+    // display credits
+    zBufferGraphics.setColor(Color.black);
+    showInfo(zBufferGraphics, "3D Objects Viewer Applet, Copyright (C) 2001 Thomas J. Dunn");
+    if (showFrameRate) {
+      showFrameRate(zBufferGraphics);
+    }
+    if (showFrameTiming) {
+      showFrameTiming(zBufferGraphics);
+    }
+    if (frameTiming != null) {
+      frameTiming.mark();
+    }
+
+    // show it on the screen
+    g.drawImage(zBuffer.getImage(), 0, 0, this);
+    if (frameTiming != null) {
+      frameTiming.stageDone(FrameTiming.BLIT);
+    }
   }
 
   public void update(Graphics g) {
@@ -295,42 +541,51 @@ public class ThreeDimensionalObjectsApplet extends Applet implements Runnable, I
     String startModel = getParameter("startModel");
     modelList.select(startModel);
     generatePolyhedron(startModel);
-    startThread();
-  }
-
-  public void startThread() {
-    painting = true;
-    paintThread = new Thread(this);
-    paintThread.start();
+    scheduler.start();
   }
 
   /**
    * Overriding applet's stop method
    */
   public void stop() {
-    painting = false;
+    if (prefetcher != null) {
+      prefetcher.pause();
+    }
+    modelLoader.cancel();
+    scheduler.stop();
   }
 
   /**
-   * For running the paint thread
+   * Overriding applet's destroy method
    */
-  public void run() {
-    while (painting) {
-      try {
-        Thread.sleep(DELAY);
-      }
-      catch (InterruptedException e) {}
-
-      // transform the object if we are rotating
-      if (rotate) {
-        rotateAroundPoint.transformPolyhedron(polyhedron);
-      }
+  public void destroy() {
+    if (frameTiming != null) {
+      frameTiming.unregister();
+    }
+  }
 
-      // and draw its updated position
-      repaint();
+  /**
+   * Turns the object, if we are rotating, by as much as it turns in the
+   * time given
+   */
+  public void advance(long millis) {
+    if (rotate) {
+      double seconds = millis / 1000.0;
+      autoRotation.setRotateAroundPoint(rotationCenter,
+                                        ROTATION_SPEED_X * seconds,
+                                        ROTATION_SPEED_Y * seconds,
+                                        ROTATION_SPEED_Z * seconds);
+      rotateObject(autoRotation);
     }
   }
 
+  /**
+   * Asks for the object to be drawn in its updated position
+   */
+  public void requestFrame() {
+    repaint();
+  }
+
   /**
    * For acting on checkbox clicks
    */
@@ -339,13 +594,22 @@ public class ThreeDimensionalObjectsApplet extends Applet implements Runnable, I
       rotate = ! rotate;
     }
     else if (ie.getSource() == filledCheckbox) {
-      filled = ! filled;
-      polyhedron.setFilled(filled);
+      synchronized (viewStateLock) {
+        viewState = viewState.withFilled(filledCheckbox.getState());
+      }
     }
     else if (ie.getSource() == modelList) {
       String objectFilename = modelList.getSelectedItem();
       generatePolyhedron(objectFilename);
     }
+    else if (ie.getSource() == drawingList) {
+      String drawing = drawingList.getSelectedItem();
+      synchronized (viewStateLock) {
+        viewState = viewState.withDrawing(drawing.equals(DRAW_ZBUFFER),
+                                          drawing.equals(DRAW_SORTED));
+      }
+      repaint();
+    }
   }
 
   /**
@@ -359,17 +623,17 @@ public class ThreeDimensionalObjectsApplet extends Applet implements Runnable, I
     }
 
     if (me.getX() < lastX) {
-      yRotatePos.transformPolyhedron(polyhedron);
+      rotateObject(yRotatePos);
     }
     else if (me.getX() > lastX) {
-      yRotateNeg.transformPolyhedron(polyhedron);
+      rotateObject(yRotateNeg);
     }
 
     if (me.getY() < lastY) {
-      xRotateNeg.transformPolyhedron(polyhedron);
+      rotateObject(xRotateNeg);
     }
     else if (me.getY() > lastY) {
-      xRotatePos.transformPolyhedron(polyhedron);
+      rotateObject(xRotatePos);
     }
     lastX = me.getX();
     lastY = me.getY();
@@ -388,6 +652,113 @@ public class ThreeDimensionalObjectsApplet extends Applet implements Runnable, I
     g.drawString(info, 5, this.getSize().height - typeSize);
   }
 
+  /**
+   * display the frame rate and frame times just above the info line
+   * @param g graphics context
+   */
+  void showFrameRate(Graphics g) {
+    FontMetrics fm = g.getFontMetrics();
+    int typeSize = fm.getAscent() + fm.getDescent();
+    g.drawString(scheduler.toString(), 5, this.getSize().height - (2 * typeSize));
+  }
+
+  /**
+   * display how long each stage of a frame takes, the median and 99th
+   * percentile frame times, and the faces drawn and culled, above the
+   * frame rate if it is shown, or else above the info line
+   * @param g graphics context
+   */
+  void showFrameTiming(Graphics g) {
+    FontMetrics fm = g.getFontMetrics();
+    int typeSize = fm.getAscent() + fm.getDescent();
+    int line = showFrameRate ? 3 : 2;
+    g.drawString(frameTiming.toString(), 5, this.getSize().height - (line * typeSize));
+    g.drawString(frameTiming.stagesToString(), 5, this.getSize().height - ((line + 1) * typeSize));
+  }
+
+  /**
+   * @return the timing of the stages of each frame, or null if frames
+   * aren't being timed
+   */
+  public FrameTiming getFrameTiming() {
+    return frameTiming;
+  }
+
+  /**
+   * @return the scheduler running the animation, for its frame rate and
+   * frame times
+   */
+  public FrameScheduler getFrameScheduler() {
+    return scheduler;
+  }
+
+  /**
+   * Sets up prefetching of the models in the manifest, which starts once
+   * the first model is showing.  The models named in the prefetchOrder
+   * parameter, separated by spaces, are prefetched first, in that order,
+   * then the rest in the order of the manifest.  The prefetchThreads and
+   * prefetchKB parameters set how many models are loaded at once and how
+   * much of the model cache prefetching can fill.
+   */
+  void createPrefetcher() {
+    int threads = PREFETCH_THREADS;
+    long bytes = PREFETCH_BYTES;
+    try {
+      if (getParameter("prefetchThreads") != null) {
+        threads = Integer.parseInt(getParameter("prefetchThreads"));
+      }
+      if (getParameter("prefetchKB") != null) {
+        bytes = Long.parseLong(getParameter("prefetchKB")) * 1024;
+      }
+    }
+    catch (NumberFormatException nfe) {
+      System.out.println("Caught NumberFormatException in ThreeDimensionalObjectsApplet, createPrefetcher()");
+      System.out.println(nfe);
+    }
+    if (threads <= 0) {
+      return;
+    }
+
+    try {
+      prefetcher = new ModelPrefetcher(new URL(getCodeBase(), "models/"), modelCache, threads, bytes);
+    }
+    catch (MalformedURLException murle) {
+      System.out.println("Caught MalformedURLException in ThreeDimensionalObjectsApplet, createPrefetcher()");
+      System.out.println(murle);
+      murle.printStackTrace();
+      return;
+    }
+
+    // the manifest order gives priorities below any from prefetchOrder
+    int count = modelList.getItemCount();
+    for (int i = 0; i < count; i++) {
+      prefetcher.add(modelList.getItem(i), count - i);
+    }
+    if (getParameter("prefetchOrder") != null) {
+      StringTokenizer st = new StringTokenizer(getParameter("prefetchOrder"));
+      int priority = count + st.countTokens();
+      while (st.hasMoreTokens()) {
+        prefetcher.add(st.nextToken(), priority--);
+      }
+    }
+  }
+
+  /**
+   * @return the prefetcher of the models in the manifest, or null if
+   * prefetching is turned off
+   */
+  public ModelPrefetcher getPrefetcher() {
+    return prefetcher;
+  }
+
+  /**
+   * @return the cache of models already seen, for its hit, miss and
+   * eviction counts
+   */
+  public ModelCache getModelCache() {
+    return modelCache;
+  }
+
   void parseManifest(BufferedReader fileReader) {
     String line = "";
     StringTokenizer st;
@@ -0,0 +1,452 @@
+package com.dunncom.graphics;
+
+import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.URL;
+import java.util.StringTokenizer;
+import java.util.Vector;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Renders every model in a models directory's manifest to PNG files, at
+ * each of a list of sizes and from each of a list of views, without a
+ * display.  Models are read with ModelLoader and drawn with
+ * ZBufferRenderer, fitted and turned the way ThreeDimensionalObjectsApplet
+ * shows them, so the pictures look like the applet.
+ * <P>
+ * Several models are rendered at once, one per thread.  Each thread keeps
+ * a ZBufferRenderer for each size and reuses them from model to model,
+ * and holds only the model it is rendering, so memory doesn't grow with
+ * the number of models.  On top of that, a thread waits before loading a
+ * model if the models being rendered already take the memory budget, so a
+ * few big models aren't all loaded at once.  A model too big for the
+ * budget on its own is still rendered, once nothing else is.
+ * <P>
+ * To run:
+ * <pre>
+ * java -Djava.awt.headless=true com.dunncom.graphics.ThumbnailRenderer
+ *   [-sizes 128,256] [-views front,iso] [-threads n] [-memoryMB n]
+ *   models-directory output-directory
+ * </pre>
+ * Views are front, back, left, right, top, bottom and iso, or turns about
+ * the x, y and z axes in degrees, such as 30/45/0.  Each picture is
+ * written as model-size-view.png, for example x_wing.obj-256-iso.png, and
+ * how long each model took is printed as it finishes.
+ *
+ * @author Thomas Dunn
+ */
+
+public class ThumbnailRenderer {
+
+  /**
+   * The views named on the command line, and the turns about the x, y and
+   * z axes, in degrees, they stand for
+   */
+  static final String VIEW_NAMES[] = {"front", "back", "left", "right", "top", "bottom", "iso"};
+  static final double VIEW_ANGLES[][] = {
+    {0, 0, 0}, {0, 180, 0}, {0, 90, 0}, {0, -90, 0}, {90, 0, 0}, {-90, 0, 0}, {35.264, 45, 0}
+  };
+
+  /**
+   * Most heap a model takes for each byte of its file, going by
+   * Polyhedron.estimateBytes() of the bundled models, which is 2 to 4
+   * times the file for all but the tiniest
+   */
+  static final int HEAP_BYTES_PER_FILE_BYTE = 4;
+
+  static final Color BACKGROUND = Color.white;
+
+  /**
+   * Renders the models for one thread
+   */
+  class Worker implements Runnable, ModelLoader.Listener {
+    ModelLoader loader;
+
+    /**
+     * One renderer for each size
+     */
+    ZBufferRenderer renderers[];
+
+    String failure;
+
+    Worker() {
+      loader = new ModelLoader(modelsURL, this);
+      renderers = new ZBufferRenderer[sizes.length];
+      for (int s = 0; s < sizes.length; s++) {
+        renderers[s] = new ZBufferRenderer(sizes[s], sizes[s]);
+      }
+    }
+
+    public void run() {
+      String modelFilename;
+      while ((modelFilename = nextModel()) != null) {
+        long reserved = estimateBytes(modelFilename);
+        reserve(reserved);
+        try {
+          renderModel(modelFilename);
+        }
+        catch (IOException ioe) {
+          failed(modelFilename, ioe.toString());
+        }
+        catch (RuntimeException re) {
+          System.out.println("Caught RuntimeException in ThumbnailRenderer in run()");
+          System.out.println(re);
+          re.printStackTrace();
+          failed(modelFilename, re.toString());
+        }
+        finally {
+          release(reserved);
+        }
+      }
+    }
+
+    void renderModel(String modelFilename) throws IOException {
+      long start = System.currentTimeMillis();
+      failure = null;
+      Polyhedron polyhedron = loader.loadNow(modelFilename);
+      if (polyhedron == null) {
+        failed(modelFilename, failure != null ? failure : "couldn't be read");
+        return;
+      }
+      long loaded = System.currentTimeMillis();
+
+      polyhedron.setFilled(true);
+      Point3D range = polyhedron.range();
+      Point3D center = polyhedron.averagePoint();
+      Matrix3D view = new Matrix3D();
+      long writing = 0;
+      for (int s = 0; s < sizes.length; s++) {
+        for (int v = 0; v < views.length; v++) {
+          polyhedron.project(viewMatrix(range, center, sizes[s], views[v], view));
+          renderers[s].clear(BACKGROUND);
+          renderers[s].render(polyhedron);
+
+          long writeStart = System.currentTimeMillis();
+          File file = new File(outputDir, ModelLoader.uncompressedName(modelFilename) +
+                               "-" + sizes[s] + "-" + viewNames[v] + ".png");
+          if (! ImageIO.write(renderers[s].getImage(), "png", file)) {
+            throw new IOException("no PNG writer");
+          }
+          writing += System.currentTimeMillis() - writeStart;
+        }
+      }
+      long done = System.currentTimeMillis();
+
+      rendered(modelFilename, polyhedron.getFaceCount(), loaded - start,
+               done - loaded - writing, writing);
+    }
+
+    public void loadProgress(String modelFilename, long bytesRead, int vertices, int faces) {}
+
+    public void modelPartlyLoaded(String modelFilename, Polyhedron polyhedron,
+                                  Point3D range, Point3D center) {}
+
+    public void modelLoaded(String modelFilename, Polyhedron polyhedron) {}
+
+    public void loadFailed(String modelFilename, String reason) {
+      failure = reason;
+    }
+  }
+
+  private File modelsDir;
+  private URL modelsURL;
+  private File outputDir;
+  private int sizes[];
+
+  /**
+   * Turns about the x, y and z axes for each view, in degrees, and what
+   * the files are called for them
+   */
+  private double views[][];
+  private String viewNames[];
+
+  private int threadCount;
+  private long memoryBudget;
+
+  /**
+   * Models not yet started
+   */
+  private Vector modelFilenames = new Vector();
+
+  /**
+   * Bytes of the memory budget taken by the models being rendered
+   */
+  private long reservedBytes;
+
+  private int modelsRendered;
+  private int failures;
+
+  /**
+   * Total of the time each model took, to compare with the wall time
+   */
+  private long modelMillis;
+
+  /**
+   * @param sizes the width and height of the pictures, in pixels
+   * @param views turns about the x, y and z axes for each view, in degrees
+   * @param viewNames what the files are called for each view
+   * @param threadCount most models to render at once
+   * @param memoryBudget heap, in bytes, the models being rendered can take
+   * before threads wait to load more
+   */
+  public ThumbnailRenderer(File modelsDir, File outputDir, int sizes[],
+                           double views[][], String viewNames[],
+                           int threadCount, long memoryBudget) throws IOException {
+    this.modelsDir = modelsDir;
+    this.modelsURL = modelsDir.toURI().toURL();
+    this.outputDir = outputDir;
+    this.sizes = sizes;
+    this.views = views;
+    this.viewNames = viewNames;
+    this.threadCount = threadCount;
+    this.memoryBudget = memoryBudget;
+  }
+
+  /**
+   * Renders every model in the manifest, returning when they are all done
+   * @return the number of models that couldn't be rendered
+   */
+  public int renderAll() throws IOException {
+    modelFilenames = readManifest(new File(modelsDir, "manifest"));
+    outputDir.mkdirs();
+
+    // the models are already spread across the processors, so the work
+    // for each model stays on its own thread
+    int oldThreadCount = ParallelTransform.getThreadCount();
+    if (threadCount > 1) {
+      ParallelTransform.setThreadCount(1);
+    }
+
+    long start = System.currentTimeMillis();
+    Thread threads[] = new Thread[Math.min(threadCount, modelFilenames.size())];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(new Worker(), "ThumbnailRenderer " + (i + 1));
+      threads[i].start();
+    }
+    for (int i = 0; i < threads.length; i++) {
+      while (threads[i].isAlive()) {
+        try {
+          threads[i].join();
+        }
+        catch (InterruptedException ie) {}
+      }
+    }
+    long wallMillis = System.currentTimeMillis() - start;
+    ParallelTransform.setThreadCount(oldThreadCount);
+
+    System.out.println(modelsRendered + " models rendered, " + failures + " failed, " +
+                       threads.length + " threads, " + wallMillis + " ms wall time, " +
+                       modelMillis + " ms of model time");
+    return failures;
+  }
+
+  /**
+   * @return the model filenames listed in a manifest, leaving off the mark
+   * before models the applet doesn't fill
+   */
+  public static Vector readManifest(File manifest) throws IOException {
+    Vector filenames = new Vector();
+    BufferedReader fileReader = new BufferedReader(new FileReader(manifest));
+    try {
+      String line;
+      while ((line = fileReader.readLine()) != null) {
+        StringTokenizer st = new StringTokenizer(line);
+        String filename = null;
+        while (st.hasMoreTokens()) {
+          filename = st.nextToken();
+        }
+        if (filename != null) {
+          filenames.addElement(filename);
+        }
+      }
+    }
+    finally {
+      fileReader.close();
+    }
+    return filenames;
+  }
+
+  /**
+   * Makes the matrix showing a model in a square of the given size, turned
+   * to a view, fitted the way ThreeDimensionalObjectsApplet fits it
+   * @param view where to put the matrix
+   * @return view
+   */
+  static Matrix3D viewMatrix(Point3D range, Point3D center, int size,
+                             double angles[], Matrix3D view) {
+    double largest = Math.max(Math.max(range.x, range.y), range.z);
+    double scaleAmount = largest > 0.0 ? (size * 0.66) / largest : 1.0;
+
+    Matrix3D centered = Matrix3D.createTranslationMatrix(-center.x, -center.y, -center.z);
+    Matrix3D orientation = Matrix3D.mult(Matrix3D.createXRotationMatrix(Math.toRadians(angles[0])),
+                                         Matrix3D.createYRotationMatrix(Math.toRadians(angles[1])));
+    orientation = Matrix3D.mult(orientation, Matrix3D.createZRotationMatrix(Math.toRadians(angles[2])));
+    Matrix3D scale = Matrix3D.createScalingMatrix(scaleAmount, scaleAmount, scaleAmount);
+    Matrix3D translate = Matrix3D.createTranslationMatrix(size / 2.0, size / 2.0, size / 2.0);
+
+    Matrix3D.mult(orientation, centered, view);
+    return Matrix3D.mult(Matrix3D.mult(translate, scale), view, view);
+  }
+
+  /**
+   * @return the next model to render, or null if there are none left
+   */
+  synchronized String nextModel() {
+    if (modelFilenames.size() == 0) {
+      return null;
+    }
+    String modelFilename = (String) modelFilenames.elementAt(0);
+    modelFilenames.removeElementAt(0);
+    return modelFilename;
+  }
+
+  /**
+   * @return about how much heap a model takes while being rendered, from
+   * the size of its file, or of its binary mesh file if that is bigger
+   */
+  long estimateBytes(String modelFilename) {
+    File file = new File(modelsDir, modelFilename);
+    File binaryFile = new File(modelsDir, ModelLoader.uncompressedName(modelFilename) +
+                               BinaryMeshFile.BINARY_SUFFIX);
+    long fileBytes = Math.max(file.length(), binaryFile.length());
+    return fileBytes * HEAP_BYTES_PER_FILE_BYTE;
+  }
+
+  /**
+   * Waits until there is room in the memory budget for a model, or nothing
+   * else is being rendered, and takes the room
+   */
+  synchronized void reserve(long bytes) {
+    while (reservedBytes > 0 && reservedBytes + bytes > memoryBudget) {
+      try {
+        wait();
+      }
+      catch (InterruptedException ie) {}
+    }
+    reservedBytes += bytes;
+  }
+
+  synchronized void release(long bytes) {
+    reservedBytes -= bytes;
+    notifyAll();
+  }
+
+  synchronized void rendered(String modelFilename, int faces, long loadMillis,
+                             long renderMillis, long writeMillis) {
+    modelsRendered++;
+    modelMillis += loadMillis + renderMillis + writeMillis;
+    System.out.println(modelFilename + ": " + faces + " faces, load " + loadMillis +
+                       " ms, render " + renderMillis + " ms, write " + writeMillis + " ms");
+  }
+
+  synchronized void failed(String modelFilename, String reason) {
+    failures++;
+    System.out.println(modelFilename + ": not rendered, " + reason);
+  }
+
+  /**
+   * @return the turns about the x, y and z axes for a view named on the
+   * command line, or null if it isn't one
+   */
+  static double[] parseView(String name) {
+    for (int i = 0; i < VIEW_NAMES.length; i++) {
+      if (VIEW_NAMES[i].equals(name)) {
+        return VIEW_ANGLES[i];
+      }
+    }
+    StringTokenizer st = new StringTokenizer(name, "/");
+    if (st.countTokens() != 3) {
+      return null;
+    }
+    double angles[] = new double[3];
+    try {
+      for (int i = 0; i < 3; i++) {
+        angles[i] = Double.parseDouble(st.nextToken());
+      }
+    }
+    catch (NumberFormatException nfe) {
+      return null;
+    }
+    return angles;
+  }
+
+  static void usage() {
+    System.out.println("usage: java -Djava.awt.headless=true com.dunncom.graphics.ThumbnailRenderer");
+    System.out.println("  [-sizes 128,256] [-views front,iso] [-threads n] [-memoryMB n]");
+    System.out.println("  models-directory output-directory");
+    System.out.println("views: front, back, left, right, top, bottom, iso, or x/y/z degrees");
+  }
+
+  public static void main(String args[]) throws IOException {
+    String sizeList = "128,256";
+    String viewList = "front,iso";
+    int threadCount = Runtime.getRuntime().availableProcessors();
+    long memoryBudget = Runtime.getRuntime().maxMemory() / 2;
+    int i = 0;
+    try {
+      for (; i + 1 < args.length && args[i].startsWith("-"); i += 2) {
+        if (args[i].equals("-sizes")) {
+          sizeList = args[i + 1];
+        }
+        else if (args[i].equals("-views")) {
+          viewList = args[i + 1];
+        }
+        else if (args[i].equals("-threads")) {
+          threadCount = Math.max(Integer.parseInt(args[i + 1]), 1);
+        }
+        else if (args[i].equals("-memoryMB")) {
+          memoryBudget = Long.parseLong(args[i + 1]) * 1024 * 1024;
+        }
+        else {
+          usage();
+          return;
+        }
+      }
+    }
+    catch (NumberFormatException nfe) {
+      usage();
+      return;
+    }
+    if (args.length - i != 2) {
+      usage();
+      return;
+    }
+
+    StringTokenizer st = new StringTokenizer(sizeList, ",");
+    int sizes[] = new int[st.countTokens()];
+    try {
+      for (int s = 0; s < sizes.length; s++) {
+        sizes[s] = Integer.parseInt(st.nextToken());
+      }
+    }
+    catch (NumberFormatException nfe) {
+      usage();
+      return;
+    }
+
+    st = new StringTokenizer(viewList, ",");
+    double views[][] = new double[st.countTokens()][];
+    String viewNames[] = new String[views.length];
+    for (int v = 0; v < views.length; v++) {
+      viewNames[v] = st.nextToken();
+      views[v] = parseView(viewNames[v]);
+      if (views[v] == null) {
+        System.out.println(viewNames[v] + ": not a view");
+        usage();
+        return;
+      }
+      viewNames[v] = viewNames[v].replace('/', '_');
+    }
+
+    ThumbnailRenderer renderer =
+      new ThumbnailRenderer(new File(args[i]), new File(args[i + 1]), sizes,
+                            views, viewNames, threadCount, memoryBudget);
+    if (renderer.renderAll() > 0) {
+      System.exit(1);
+    }
+  }
+}
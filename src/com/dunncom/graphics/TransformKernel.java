@@ -0,0 +1,23 @@
+package com.dunncom.graphics;
+
+/**
+ * The inner loop of Matrix3D.transformCoordinates() for affine matrices,
+ * pulled out so a faster version can be plugged in where the VM has one.
+ * Matrix3D looks for VectorTransformKernel, which uses the
+ * jdk.incubator.vector module, and uses its own loop if it isn't there.
+ *
+ * @author Thomas Dunn
+ */
+
+public interface TransformKernel {
+
+  /**
+   * Transforms the points from index start up to, but not including, index
+   * end by the top three rows of a matrix, taking the homogeneous
+   * coordinate of each point to be 1.  The results must be exactly the
+   * same as Matrix3D's own loop gives.
+   * @param m the entries of the matrix, one row after another
+   */
+  void transformAffine(double m[], double x[], double y[], double z[], int start, int end,
+                       double outX[], double outY[], double outZ[]);
+}
@@ -0,0 +1,128 @@
+package com.dunncom.graphics;
+
+/**
+ * Everything needed to draw one frame of the viewer: which object, how it
+ * is turned and fitted to the view, and how it is drawn.
+ * <P>
+ * A ViewState never changes once made.  Mouse drags, the animation and
+ * model loading each make a new one with the with...() methods and put it
+ * in place with a single reference assignment, and paint() takes the
+ * latest one and draws from it without locking anything.  Since the whole
+ * frame comes from one ViewState, a frame can never be drawn half from
+ * the old model and half from the new.  The matrices in a ViewState must
+ * not be changed either.
+ *
+ * @author Thomas Dunn
+ */
+
+public class ViewState {
+
+  /**
+   * The object, as loaded, or null if none is loaded yet
+   */
+  public final Polyhedron polyhedron;
+
+  /**
+   * Which way the object is turned, a pure rotation
+   */
+  public final Matrix3D orientation;
+
+  /**
+   * Moves the "center" of the object to the origin, so it turns in place
+   */
+  public final Matrix3D centerObject;
+
+  /**
+   * Scales the object to fit the view and moves it into the middle
+   */
+  public final Matrix3D fitObject;
+
+  /**
+   * whether the object is filled or a wireframe
+   */
+  public final boolean filled;
+
+  /**
+   * whether the object is drawn with a depth buffer
+   */
+  public final boolean zBuffered;
+
+  /**
+   * whether the object's polygons are drawn from back to front
+   */
+  public final boolean depthSorted;
+
+  public ViewState(Polyhedron polyhedron, Matrix3D orientation,
+                   Matrix3D centerObject, Matrix3D fitObject,
+                   boolean filled, boolean zBuffered, boolean depthSorted) {
+    this.polyhedron = polyhedron;
+    this.orientation = orientation;
+    this.centerObject = centerObject;
+    this.fitObject = fitObject;
+    this.filled = filled;
+    this.zBuffered = zBuffered;
+    this.depthSorted = depthSorted;
+  }
+
+  /**
+   * @return a view of nothing yet, filled and drawn polygon by polygon
+   */
+  public static ViewState createEmptyViewState() {
+    Matrix3D unit = Matrix3D.createUnitMatrix();
+    return new ViewState(null, unit, unit, unit, true, false, false);
+  }
+
+  /**
+   * @return this view turned by a rotation, on top of how it is already
+   * turned
+   */
+  public ViewState withRotation(Matrix3D rotation) {
+    Matrix3D newOrientation = Matrix3D.mult(rotation, orientation);
+    newOrientation.orthonormalize();
+    return new ViewState(polyhedron, newOrientation, centerObject, fitObject,
+                         filled, zBuffered, depthSorted);
+  }
+
+  /**
+   * @return this view of a different object, turned back to the way it
+   * was loaded
+   */
+  public ViewState withPolyhedron(Polyhedron newPolyhedron, Matrix3D newCenterObject,
+                                  Matrix3D newFitObject, boolean newFilled) {
+    return new ViewState(newPolyhedron, Matrix3D.createUnitMatrix(),
+                         newCenterObject, newFitObject,
+                         newFilled, zBuffered, depthSorted);
+  }
+
+  /**
+   * @return this view of more of the same object, as it loads, still
+   * turned the way it is
+   */
+  public ViewState withGrownPolyhedron(Polyhedron newPolyhedron, Matrix3D newCenterObject,
+                                       Matrix3D newFitObject) {
+    return new ViewState(newPolyhedron, orientation,
+                         newCenterObject, newFitObject,
+                         filled, zBuffered, depthSorted);
+  }
+
+  public ViewState withFilled(boolean newFilled) {
+    return new ViewState(polyhedron, orientation, centerObject, fitObject,
+                         newFilled, zBuffered, depthSorted);
+  }
+
+  public ViewState withDrawing(boolean newZBuffered, boolean newDepthSorted) {
+    return new ViewState(polyhedron, orientation, centerObject, fitObject,
+                         filled, newZBuffered, newDepthSorted);
+  }
+
+  /**
+   * Works out the matrix taking the object as loaded to where it is on
+   * screen
+   * @param view where to put the matrix
+   * @return view
+   */
+  public Matrix3D viewMatrix(Matrix3D view) {
+    Matrix3D.mult(orientation, centerObject, view);
+    return Matrix3D.mult(fitObject, view, view);
+  }
+}
@@ -0,0 +1,221 @@
+package com.dunncom.graphics;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * Draws a Polyhedron by filling its faces straight into the pixels of an
+ * image, with a depth buffer so nearer faces hide farther ones whatever
+ * order the faces come in.  Faces are not culled, since some models don't
+ * list the points of all their faces in the same direction, and the depth
+ * buffer sorts out which faces show anyway.
+ * <P>
+ * Everything is drawn into an int array behind the image, so a whole frame
+ * takes one drawImage() to get on screen, instead of a fillPolygon() and a
+ * drawPolygon() per face.  Smaller z is nearer, the same as
+ * for Polyhedron.isFacing().
+ *
+ * @author Thomas Dunn
+ */
+
+public class ZBufferRenderer {
+
+  /**
+   * How much farther than the surface a wire frame line can be and still
+   * show, so the outlines of faces aren't lost in their own fill
+   */
+  static final float LINE_DEPTH_BIAS = 1.0f;
+
+  private int width;
+  private int height;
+
+  /**
+   * The image drawn into
+   */
+  private BufferedImage image;
+
+  /**
+   * The pixels of image, one row after another
+   */
+  private int pixels[];
+
+  /**
+   * Depth of what is drawn at each pixel
+   */
+  private float depth[];
+
+  public ZBufferRenderer(int width, int height) {
+    this.width = width;
+    this.height = height;
+    image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    depth = new float[width * height];
+  }
+
+  /**
+   * @return the image everything is drawn into
+   */
+  public BufferedImage getImage() {
+    return image;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Fills the image with a background color and empties the depth buffer
+   */
+  public void clear(Color background) {
+    Arrays.fill(pixels, background.getRGB());
+    Arrays.fill(depth, Float.MAX_VALUE);
+  }
+
+  /**
+   * Draws a polyhedron as transformed by its last call to project(), on top
+   * of whatever has been drawn since the last clear().  Filled polyhedrons
+   * get shaded faces with black outlines where they show, wireframes get
+   * every outline.
+   */
+  public void render(Polyhedron polyhedron) {
+    polyhedron.ensureProjected();
+
+    Mesh mesh = polyhedron.mesh;
+    int faceStart[] = mesh.faceStart;
+    int faceVertices[] = mesh.faceVertices;
+    double x[] = polyhedron.viewX;
+    double y[] = polyhedron.viewY;
+    double z[] = polyhedron.viewZ;
+    byte shades[] = polyhedron.faceShades;
+    boolean filled = polyhedron.isFilled();
+
+    if (filled) {
+      for (int f = 0; f < mesh.faceCount; f++) {
+        int rgb = Lighting.getRGB(shades[f] & 0xff);
+
+        // split the face into a fan of triangles around its first vertex
+        int first = faceVertices[faceStart[f]];
+        for (int i = faceStart[f] + 1; i < faceStart[f + 1] - 1; i++) {
+          int second = faceVertices[i];
+          int third = faceVertices[i + 1];
+          fillTriangle(x[first], y[first], z[first],
+                       x[second], y[second], z[second],
+                       x[third], y[third], z[third],
+                       rgb);
+        }
+      }
+    }
+
+    int black = Color.black.getRGB();
+    for (int f = 0; f < mesh.faceCount; f++) {
+      int last = faceVertices[faceStart[f + 1] - 1];
+      for (int i = faceStart[f]; i < faceStart[f + 1]; i++) {
+        int next = faceVertices[i];
+        drawLine((int) x[last], (int) y[last], z[last],
+                 (int) x[next], (int) y[next], z[next],
+                 black, filled);
+        last = next;
+      }
+    }
+  }
+
+  /**
+   * Fills the pixels whose centers are inside a triangle, where the
+   * triangle is nearer than what is already there
+   */
+  void fillTriangle(double x0, double y0, double z0,
+                    double x1, double y1, double z1,
+                    double x2, double y2, double z2,
+                    int rgb) {
+    double area = ((x1 - x0) * (y2 - y0)) - ((y1 - y0) * (x2 - x0));
+    if (area == 0.0) {
+      return;
+    }
+    if (area < 0.0) {
+      // list the points the other way around, so inside is positive
+      double t = x1; x1 = x2; x2 = t;
+      t = y1; y1 = y2; y2 = t;
+      t = z1; z1 = z2; z2 = t;
+      area = -area;
+    }
+
+    int minX = Math.max((int) Math.ceil(Math.min(x0, Math.min(x1, x2)) - 0.5), 0);
+    int maxX = Math.min((int) Math.floor(Math.max(x0, Math.max(x1, x2)) - 0.5), width - 1);
+    int minY = Math.max((int) Math.ceil(Math.min(y0, Math.min(y1, y2)) - 0.5), 0);
+    int maxY = Math.min((int) Math.floor(Math.max(y0, Math.max(y1, y2)) - 0.5), height - 1);
+    if (minX > maxX || minY > maxY) {
+      return;
+    }
+
+    // edge functions, each is area at the vertex opposite its edge and
+    // zero along the edge
+    double stepX0 = y1 - y2;
+    double stepX1 = y2 - y0;
+    double stepX2 = y0 - y1;
+
+    double startX = minX + 0.5;
+    for (int py = minY; py <= maxY; py++) {
+      double centerY = py + 0.5;
+      double w0 = ((x2 - x1) * (centerY - y1)) - ((y2 - y1) * (startX - x1));
+      double w1 = ((x0 - x2) * (centerY - y2)) - ((y0 - y2) * (startX - x2));
+      double w2 = ((x1 - x0) * (centerY - y0)) - ((y1 - y0) * (startX - x0));
+
+      int pixel = (py * width) + minX;
+      for (int px = minX; px <= maxX; px++, pixel++) {
+        if (w0 >= 0.0 && w1 >= 0.0 && w2 >= 0.0) {
+          float pz = (float) (((w0 * z0) + (w1 * z1) + (w2 * z2)) / area);
+          if (pz < depth[pixel]) {
+            depth[pixel] = pz;
+            pixels[pixel] = rgb;
+          }
+        }
+        w0 += stepX0;
+        w1 += stepX1;
+        w2 += stepX2;
+      }
+    }
+  }
+
+  /**
+   * Draws a one pixel wide line.  The line doesn't change the depth
+   * buffer.
+   * @param depthTest whether to leave out the parts of the line behind
+   * what is already drawn
+   */
+  void drawLine(int x0, int y0, double z0, int x1, int y1, double z1,
+                int rgb, boolean depthTest) {
+    int dx = x1 - x0;
+    int dy = y1 - y0;
+    int steps = Math.max(Math.abs(dx), Math.abs(dy));
+    if (steps == 0) {
+      steps = 1;
+    }
+
+    // step one pixel at a time along the longer direction
+    double stepX = (double) dx / steps;
+    double stepY = (double) dy / steps;
+    double stepZ = (z1 - z0) / steps;
+    double lineX = x0 + 0.5;
+    double lineY = y0 + 0.5;
+    double lineZ = z0;
+
+    for (int i = 0; i <= steps; i++, lineX += stepX, lineY += stepY, lineZ += stepZ) {
+      int px = (int) Math.floor(lineX);
+      int py = (int) Math.floor(lineY);
+      if (px < 0 || px >= width || py < 0 || py >= height) {
+        continue;
+      }
+      int pixel = (py * width) + px;
+      if (depthTest && lineZ > depth[pixel] + LINE_DEPTH_BIAS) {
+        continue;
+      }
+      pixels[pixel] = rgb;
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package com.dunncom.graphics;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * TransformKernel that transforms as many points at once as the processor's
+ * vector registers hold, using the jdk.incubator.vector module.  It is kept
+ * out of the applet sources since it needs a recent VM; compile and run it
+ * with <code>--add-modules jdk.incubator.vector</code> and Matrix3D will
+ * pick it up.  The products are added in the same order as Matrix3D's own
+ * loop, so the results are exactly the same.
+ *
+ * @author Thomas Dunn
+ */
+
+public class VectorTransformKernel implements TransformKernel {
+
+  private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+  public void transformAffine(double m[], double x[], double y[], double z[], int start, int end,
+                              double outX[], double outY[], double outZ[]) {
+    double m00 = m[0], m01 = m[1], m02 = m[2], m03 = m[3];
+    double m10 = m[4], m11 = m[5], m12 = m[6], m13 = m[7];
+    double m20 = m[8], m21 = m[9], m22 = m[10], m23 = m[11];
+
+    int i = start;
+    int vectorEnd = start + SPECIES.loopBound(end - start);
+    for (; i < vectorEnd; i += SPECIES.length()) {
+      DoubleVector px = DoubleVector.fromArray(SPECIES, x, i);
+      DoubleVector py = DoubleVector.fromArray(SPECIES, y, i);
+      DoubleVector pz = DoubleVector.fromArray(SPECIES, z, i);
+      px.mul(m00).add(py.mul(m01)).add(pz.mul(m02)).add(m03).intoArray(outX, i);
+      px.mul(m10).add(py.mul(m11)).add(pz.mul(m12)).add(m13).intoArray(outY, i);
+      px.mul(m20).add(py.mul(m21)).add(pz.mul(m22)).add(m23).intoArray(outZ, i);
+    }
+
+    // whatever is left over doesn't fill a vector
+    for (; i < end; i++) {
+      double px = x[i];
+      double py = y[i];
+      double pz = z[i];
+      outX[i] = (m00 * px) + (m01 * py) + (m02 * pz) + m03;
+      outY[i] = (m10 * px) + (m11 * py) + (m12 * pz) + m13;
+      outZ[i] = (m20 * px) + (m21 * py) + (m22 * pz) + m23;
+    }
+  }
+}